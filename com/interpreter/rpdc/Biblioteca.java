@@ -0,0 +1,51 @@
+package com.interpreter.rpdc;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// The standard library. Each module is an instance whose fields are native
+// functions, called as 'siruri.subsir(s, 0, 3)'. Modules are only built the
+// first time a program reads one, when the global lookup misses; see
+// Environment.get. The VM does the same with the functions() of a module.
+public final class Biblioteca {
+    private static final Map<String, Supplier<RpdcInstance>> modules =
+            Map.of("matematica", Matematica::module,
+                   "siruri", Siruri::module);
+
+    private Biblioteca() {}
+
+    // A fresh copy of the module called 'name', or null if there is none.
+    static RpdcInstance load(String name) {
+        Supplier<RpdcInstance> module = modules.get(name);
+        return module == null ? null : module.get();
+    }
+
+    public static boolean isModule(String name) {
+        return modules.containsKey(name);
+    }
+
+    // The functions of a fresh copy of the module called 'name', by name, or
+    // null if there is none.
+    public static Map<String, RpdcCallable> functions(String name) {
+        RpdcInstance module = load(name);
+        if (module == null) return null;
+
+        Map<String, RpdcCallable> functions = new HashMap<>();
+        for (String function : module.shape.names()) {
+            functions.put(function,
+                    (RpdcCallable)module.fields[module.shape.indexOf(function)]);
+        }
+        return functions;
+    }
+
+    static RpdcInstance module(String name) {
+        return new RpdcInstance(new RpdcClass(name, null, new HashMap<>()));
+    }
+
+    static void define(RpdcInstance module, String name, int arity,
+                       NativeFunction.Body body) {
+        module.set(new Token(TokenType.IDENTIFICATOR, name, null, 0),
+                new NativeFunction(arity, body));
+    }
+}
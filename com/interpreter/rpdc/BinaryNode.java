@@ -0,0 +1,334 @@
+package com.interpreter.rpdc;
+
+// Specialized implementations of Expr.Binary used when the interpreter runs
+// with node specialization enabled. A Binary starts UNINITIALIZED, rewrites
+// itself to the node matching the operand types it first sees, and falls
+// back to GENERIC for good once those types change.
+abstract class BinaryNode {
+    abstract Object execute(Interpreter interpreter, Expr.Binary expr,
+                            Object left, Object right);
+
+    static final BinaryNode UNINITIALIZED = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            expr.node = specialize(expr.operator.type, left, right);
+            return expr.node.execute(interpreter, expr, left, right);
+        }
+    };
+
+    static final BinaryNode GENERIC = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            return interpreter.binary(expr.operator, left, right);
+        }
+    };
+
+    private static final BinaryNode STRING_CONCAT = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (RpdcString.isString(left) && RpdcString.isString(right)) {
+                return RpdcString.concat(left, right);
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    private static final BinaryNode DOUBLE_ADD = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double)left + (double)right;
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    private static final BinaryNode DOUBLE_SUBTRACT = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double)left - (double)right;
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    private static final BinaryNode DOUBLE_MULTIPLY = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double)left * (double)right;
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    private static final BinaryNode DOUBLE_DIVIDE = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double)left / (double)right;
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    private static final BinaryNode DOUBLE_GREATER = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double)left > (double)right;
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    private static final BinaryNode DOUBLE_GREATER_EQUAL = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double)left >= (double)right;
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    private static final BinaryNode DOUBLE_LESS = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double)left < (double)right;
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    private static final BinaryNode DOUBLE_LESS_EQUAL = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double)left <= (double)right;
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    // Same result as Double.equals, which is what isEqual uses for numbers.
+    private static final BinaryNode DOUBLE_EQUAL = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return Double.doubleToLongBits((double)left) ==
+                        Double.doubleToLongBits((double)right);
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    private static final BinaryNode DOUBLE_NOT_EQUAL = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return Double.doubleToLongBits((double)left) !=
+                        Double.doubleToLongBits((double)right);
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    private static final BinaryNode DOUBLE_MODULO = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double)left % (double)right;
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    // Long operands stay on these nodes even when the result overflows into
+    // a BigInteger or, for division, comes out fractional; Numbers does the
+    // checking.
+    private static final BinaryNode LONG_ADD = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                return Numbers.add(left, right);
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    private static final BinaryNode LONG_SUBTRACT = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                return Numbers.subtract(left, right);
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    private static final BinaryNode LONG_MULTIPLY = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                return Numbers.multiply(left, right);
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    private static final BinaryNode LONG_DIVIDE = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                return Numbers.divide(left, right);
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    private static final BinaryNode LONG_MODULO = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                return Numbers.modulo(left, right);
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    private static final BinaryNode LONG_GREATER = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                return (long)left > (long)right;
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    private static final BinaryNode LONG_GREATER_EQUAL = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                return (long)left >= (long)right;
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    private static final BinaryNode LONG_LESS = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                return (long)left < (long)right;
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    private static final BinaryNode LONG_LESS_EQUAL = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                return (long)left <= (long)right;
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    private static final BinaryNode LONG_EQUAL = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                return (long)left == (long)right;
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    private static final BinaryNode LONG_NOT_EQUAL = new BinaryNode() {
+        @Override
+        Object execute(Interpreter interpreter, Expr.Binary expr,
+                       Object left, Object right) {
+            if (left instanceof Long && right instanceof Long) {
+                return (long)left != (long)right;
+            }
+            return deoptimize(interpreter, expr, left, right);
+        }
+    };
+
+    private static BinaryNode specialize(TokenType type, Object left,
+                                         Object right) {
+        if (left instanceof Double && right instanceof Double) {
+            switch (type) {
+                case PLUS: return DOUBLE_ADD;
+                case MINUS: return DOUBLE_SUBTRACT;
+                case STAR: return DOUBLE_MULTIPLY;
+                case SLASH: return DOUBLE_DIVIDE;
+                case PROCENT: return DOUBLE_MODULO;
+                case MAI_MARE: return DOUBLE_GREATER;
+                case MAI_MARE_EGAL: return DOUBLE_GREATER_EQUAL;
+                case MAI_MIC: return DOUBLE_LESS;
+                case MAI_MIC_EGAL: return DOUBLE_LESS_EQUAL;
+                case EGAL_EGAL: return DOUBLE_EQUAL;
+                case NEGARE_EGAL: return DOUBLE_NOT_EQUAL;
+            }
+        }
+
+        if (left instanceof Long && right instanceof Long) {
+            switch (type) {
+                case PLUS: return LONG_ADD;
+                case MINUS: return LONG_SUBTRACT;
+                case STAR: return LONG_MULTIPLY;
+                case SLASH: return LONG_DIVIDE;
+                case PROCENT: return LONG_MODULO;
+                case MAI_MARE: return LONG_GREATER;
+                case MAI_MARE_EGAL: return LONG_GREATER_EQUAL;
+                case MAI_MIC: return LONG_LESS;
+                case MAI_MIC_EGAL: return LONG_LESS_EQUAL;
+                case EGAL_EGAL: return LONG_EQUAL;
+                case NEGARE_EGAL: return LONG_NOT_EQUAL;
+            }
+        }
+
+        if (type == TokenType.PLUS &&
+                RpdcString.isString(left) && RpdcString.isString(right)) {
+            return STRING_CONCAT;
+        }
+
+        return GENERIC;
+    }
+
+    private static Object deoptimize(Interpreter interpreter, Expr.Binary expr,
+                                     Object left, Object right) {
+        expr.node = GENERIC;
+        return GENERIC.execute(interpreter, expr, left, right);
+    }
+}
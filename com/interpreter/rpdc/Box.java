@@ -0,0 +1,12 @@
+package com.interpreter.rpdc;
+
+// Holds a local variable that a closure captures and that is assigned after
+// it is declared, so the closure and the declaring scope share one value.
+// Slots and upvalues holding a Box are read and written through it.
+class Box {
+    Object value;
+
+    Box(Object value) {
+        this.value = value;
+    }
+}
@@ -0,0 +1,813 @@
+package com.interpreter.rpdc;
+
+import com.interpreter.rpdc.vm.Chunk;
+import com.interpreter.rpdc.vm.ObjFunction;
+import com.interpreter.rpdc.vm.OpCode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Lowers the resolved AST to bytecode for the VM in com.interpreter.rpdc.vm.
+// It lives next to the AST because the node classes are package-private.
+class BytecodeCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final int MAX_LOCALS = 256;
+    private static final int MAX_UPVALUES = 256;
+
+    private static class Local {
+        final String name;
+        int depth;
+        boolean isCaptured = false;
+
+        Local(String name, int depth) {
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    private static class Upvalue {
+        final int index;
+        final boolean isLocal;
+
+        Upvalue(int index, boolean isLocal) {
+            this.index = index;
+            this.isLocal = isLocal;
+        }
+    }
+
+    // Where 'opreste' and 'continua' inside a loop body jump to. Both first
+    // drop the locals the body declared so far.
+    private static class LoopState {
+        final LoopState enclosing;
+        final int locals;
+        // The loop start for 'continua' to jump back to, or -1 if it jumps
+        // forward to code after the body.
+        final int start;
+        final List<Integer> breaks = new ArrayList<>();
+        final List<Integer> continues = new ArrayList<>();
+
+        LoopState(LoopState enclosing, int locals, int start) {
+            this.enclosing = enclosing;
+            this.locals = locals;
+            this.start = start;
+        }
+    }
+
+    private static class FunctionState {
+        final FunctionState enclosing;
+        final ObjFunction function;
+        final FunctionType type;
+        final List<Local> locals = new ArrayList<>();
+        final List<Upvalue> upvalues = new ArrayList<>();
+        int scopeDepth = 0;
+        LoopState loop = null;
+
+        FunctionState(FunctionState enclosing, ObjFunction function,
+                      FunctionType type) {
+            this.enclosing = enclosing;
+            this.function = function;
+            this.type = type;
+        }
+    }
+
+    private static class ClassState {
+        final ClassState enclosing;
+        boolean hasSuperclass = false;
+
+        ClassState(ClassState enclosing) {
+            this.enclosing = enclosing;
+        }
+    }
+
+    private FunctionState current = null;
+    private ClassState currentClass = null;
+    private int line = 0;
+
+    ObjFunction compile(List<Stmt> statements) {
+        current = new FunctionState(null, new ObjFunction(null),
+                FunctionType.NONE);
+        current.locals.add(new Local("", 0));
+
+        for (Stmt statement : statements) {
+            compile(statement);
+        }
+        emitReturn();
+
+        return current.function;
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        for (Stmt statement : stmt.statements) {
+            compile(statement);
+        }
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        line = stmt.keyword.line;
+        discardLocals(current.loop.locals);
+        current.loop.breaks.add(emitJump(OpCode.JUMP));
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        line = stmt.name.line;
+        int nameConstant = makeConstant(stmt.name.lexeme);
+        declareVariable(stmt.name);
+
+        emitOpShort(OpCode.CLASS, nameConstant);
+        defineVariable(nameConstant);
+
+        ClassState classState = new ClassState(currentClass);
+        currentClass = classState;
+
+        if (stmt.superclass != null) {
+            compile(stmt.superclass);
+
+            beginScope();
+            addLocal("super");
+            markInitialized();
+
+            namedVariable(stmt.name);
+            line = stmt.superclass.name.line;
+            emitByte(OpCode.INHERIT);
+            classState.hasSuperclass = true;
+        }
+
+        namedVariable(stmt.name);
+        for (Stmt.Function method : stmt.methods) {
+            FunctionType type = FunctionType.METHOD;
+            if (method.name.lexeme.equals("init")) {
+                type = FunctionType.INITIALIZER;
+            }
+
+            function(method, type);
+            emitOpShort(OpCode.METHOD, makeConstant(method.name.lexeme));
+        }
+        emitByte(OpCode.POP);
+
+        if (classState.hasSuperclass) endScope();
+
+        currentClass = currentClass.enclosing;
+        return null;
+    }
+
+    @Override
+    public Void visitContinueStmt(Stmt.Continue stmt) {
+        line = stmt.keyword.line;
+        LoopState loop = current.loop;
+        discardLocals(loop.locals);
+        if (loop.start >= 0) {
+            emitLoop(loop.start);
+        } else {
+            loop.continues.add(emitJump(OpCode.JUMP));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        emitByte(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        line = stmt.name.line;
+        int nameConstant = current.scopeDepth > 0 ? 0 : makeConstant(stmt.name.lexeme);
+        declareVariable(stmt.name);
+        markInitialized();
+        function(stmt, FunctionType.FUNCTION);
+        defineVariable(nameConstant);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        compile(stmt.condition);
+
+        int thenJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emitByte(OpCode.POP);
+        compile(stmt.thenBranch);
+
+        int elseJump = emitJump(OpCode.JUMP);
+        patchJump(thenJump);
+        emitByte(OpCode.POP);
+
+        if (stmt.elseBranch != null) compile(stmt.elseBranch);
+        patchJump(elseJump);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emitByte(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        line = stmt.keyword.line;
+        if (stmt.value == null) {
+            emitReturn();
+        } else if (stmt.tail) {
+            // The callee is evaluated on its own, a method into a bound
+            // method, so that TAIL_CALL sees what is being called. The
+            // RETURN is for callees that run without a frame of their own.
+            Expr.Call call = (Expr.Call)stmt.value;
+            compile(call.callee);
+            compileArguments(call.arguments);
+            line = call.paren.line;
+            emitBytes(OpCode.TAIL_CALL, call.arguments.size());
+            emitByte(OpCode.RETURN);
+        } else {
+            compile(stmt.value);
+            emitByte(OpCode.RETURN);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        line = stmt.name.line;
+        int nameConstant = current.scopeDepth > 0 ? 0 : makeConstant(stmt.name.lexeme);
+        declareVariable(stmt.name);
+
+        if (stmt.initializer != null) {
+            compile(stmt.initializer);
+        } else {
+            emitByte(OpCode.NIL);
+        }
+
+        defineVariable(nameConstant);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        int loopStart = current.function.chunk().count();
+        compile(stmt.condition);
+
+        int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emitByte(OpCode.POP);
+        LoopState loop = beginLoop(loopStart);
+        compile(stmt.body);
+        emitLoop(loopStart);
+
+        patchJump(exitJump);
+        emitByte(OpCode.POP);
+        endLoop(loop);
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        beginScope();
+        if (stmt.initializer != null) compile(stmt.initializer);
+
+        int loopStart = current.function.chunk().count();
+        int exitJump = -1;
+        if (stmt.condition != null) {
+            compile(stmt.condition);
+            exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+            emitByte(OpCode.POP);
+        }
+
+        LoopState loop = beginLoop(-1);
+        compile(stmt.body);
+        patchJumps(loop.continues);
+        if (stmt.increment != null) {
+            compile(stmt.increment);
+            emitByte(OpCode.POP);
+        }
+        emitLoop(loopStart);
+
+        if (exitJump != -1) {
+            patchJump(exitJump);
+            emitByte(OpCode.POP);
+        }
+        endLoop(loop);
+        endScope();
+        return null;
+    }
+
+    // The counter, the limit and the step sit in three consecutive locals;
+    // FOR_PREP checks them once and FOR_LOOP steps the counter in place.
+    @Override
+    public Void visitCountStmt(Stmt.Count stmt) {
+        beginScope();
+        compile(stmt.from);
+        compile(stmt.to);
+        if (stmt.step != null) {
+            compile(stmt.step);
+        } else {
+            emitOpShort(OpCode.INTEGER, makeInteger(1));
+        }
+
+        line = stmt.name.line;
+        int slot = current.locals.size();
+        if (slot + 3 > MAX_LOCALS) {
+            Main.error(stmt.name, "Too many local variables in function.");
+            return null;
+        }
+        addLocal(stmt.name.lexeme);
+        addLocal(" limit");
+        addLocal(" step");
+        for (int i = slot; i < slot + 3; i++) {
+            current.locals.get(i).depth = current.scopeDepth;
+        }
+
+        emitBytes(OpCode.FOR_PREP, slot);
+        emitByte(0xff);
+        emitByte(0xff);
+        int exitJump = current.function.chunk().count() - 2;
+
+        int loopStart = current.function.chunk().count();
+        LoopState loop = beginLoop(-1);
+        compile(stmt.body);
+        patchJumps(loop.continues);
+
+        line = stmt.name.line;
+        emitBytes(OpCode.FOR_LOOP, slot);
+        int offset = current.function.chunk().count() - loopStart + 2;
+        if (offset > 0xffff) Main.error(line, "Loop body too large.");
+        emitByte((offset >> 8) & 0xff);
+        emitByte(offset & 0xff);
+
+        patchJump(exitJump);
+        endLoop(loop);
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitArrayExpr(Expr.Array expr) {
+        for (Expr element : expr.elements) {
+            compile(element);
+        }
+        line = expr.bracket.line;
+        if (expr.elements.size() > 0xffff) {
+            Main.error(expr.bracket, "Too many elements in one array literal.");
+            return null;
+        }
+        emitOpShort(OpCode.NEW_ARRAY, expr.elements.size());
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        compile(expr.value);
+        line = expr.name.line;
+
+        int arg = resolveLocal(current, expr.name);
+        if (arg != -1) {
+            emitBytes(OpCode.SET_LOCAL, arg);
+        } else if ((arg = resolveUpvalue(current, expr.name)) != -1) {
+            emitBytes(OpCode.SET_UPVALUE, arg);
+        } else {
+            emitOpShort(OpCode.SET_GLOBAL, makeConstant(expr.name.lexeme));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+        compile(expr.right);
+
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case PLUS: emitByte(OpCode.ADD); break;
+            case MINUS: emitByte(OpCode.SUBTRACT); break;
+            case STAR: emitByte(OpCode.MULTIPLY); break;
+            case SLASH: emitByte(OpCode.DIVIDE); break;
+            case PROCENT: emitByte(OpCode.MODULO); break;
+            case MAI_MARE: emitByte(OpCode.GREATER); break;
+            case MAI_MARE_EGAL: emitByte(OpCode.GREATER_EQUAL); break;
+            case MAI_MIC: emitByte(OpCode.LESS); break;
+            case MAI_MIC_EGAL: emitByte(OpCode.LESS_EQUAL); break;
+            case EGAL_EGAL: emitByte(OpCode.EQUAL); break;
+            case NEGARE_EGAL: emitByte(OpCode.NOT_EQUAL); break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        if (expr.callee instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get)expr.callee;
+            compile(get.object);
+            compileArguments(expr.arguments);
+            line = get.name.line;
+            emitOpShort(OpCode.INVOKE, makeConstant(get.name.lexeme));
+            emitByte(expr.arguments.size());
+            return null;
+        }
+
+        if (expr.callee instanceof Expr.Super) {
+            Expr.Super superExpr = (Expr.Super)expr.callee;
+            namedVariable(new Token(TokenType.ACESTA, "acesta", null,
+                    superExpr.keyword.line));
+            compileArguments(expr.arguments);
+            namedVariable(superExpr.keyword);
+            line = superExpr.method.line;
+            emitOpShort(OpCode.SUPER_INVOKE,
+                    makeConstant(superExpr.method.lexeme));
+            emitByte(expr.arguments.size());
+            return null;
+        }
+
+        compile(expr.callee);
+        compileArguments(expr.arguments);
+        line = expr.paren.line;
+        emitBytes(OpCode.CALL, expr.arguments.size());
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        compile(expr.object);
+        line = expr.name.line;
+        emitOpShort(OpCode.GET_PROPERTY, makeConstant(expr.name.lexeme));
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) {
+        compile(expr.object);
+        compile(expr.index);
+        line = expr.bracket.line;
+        emitByte(OpCode.GET_INDEX);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emitByte(OpCode.NIL);
+        } else if (expr.value.equals(true)) {
+            emitByte(OpCode.TRUE);
+        } else if (expr.value.equals(false)) {
+            emitByte(OpCode.FALSE);
+        } else if (expr.value instanceof Long) {
+            emitOpShort(OpCode.INTEGER, makeInteger((long)expr.value));
+        } else if (expr.value instanceof Double) {
+            emitOpShort(OpCode.NUMBER, makeNumber((double)expr.value));
+        } else {
+            emitOpShort(OpCode.CONSTANT, makeConstant(expr.value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left);
+
+        if (expr.operator.type == TokenType.SAU) {
+            int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+            int endJump = emitJump(OpCode.JUMP);
+
+            patchJump(elseJump);
+            emitByte(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        } else {
+            int endJump = emitJump(OpCode.JUMP_IF_FALSE);
+            emitByte(OpCode.POP);
+            compile(expr.right);
+            patchJump(endJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        compile(expr.object);
+        compile(expr.value);
+        line = expr.name.line;
+        emitOpShort(OpCode.SET_PROPERTY, makeConstant(expr.name.lexeme));
+        return null;
+    }
+
+    // Like the tree-walk interpreter, checks the index before evaluating
+    // the value.
+    @Override
+    public Void visitSetIndexExpr(Expr.SetIndex expr) {
+        compile(expr.object);
+        compile(expr.index);
+        line = expr.bracket.line;
+        emitByte(OpCode.CHECK_INDEX);
+        compile(expr.value);
+        line = expr.bracket.line;
+        emitByte(OpCode.SET_INDEX);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        namedVariable(new Token(TokenType.ACESTA, "acesta", null,
+                expr.keyword.line));
+        namedVariable(expr.keyword);
+        line = expr.method.line;
+        emitOpShort(OpCode.GET_SUPER, makeConstant(expr.method.lexeme));
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        namedVariable(expr.keyword);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case MINUS: emitByte(OpCode.NEGATE); break;
+            case NEGARE: emitByte(OpCode.NOT); break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        namedVariable(expr.name);
+        return null;
+    }
+
+    private void function(Stmt.Function stmt, FunctionType type) {
+        current = new FunctionState(current,
+                new ObjFunction(stmt.name.lexeme), type);
+        if (type == FunctionType.METHOD || type == FunctionType.INITIALIZER) {
+            current.locals.add(new Local("acesta", 0));
+        } else {
+            current.locals.add(new Local("", 0));
+        }
+
+        beginScope();
+        current.function.setArity(stmt.params.size());
+        for (Token param : stmt.params) {
+            declareVariable(param);
+            markInitialized();
+        }
+
+        for (Stmt statement : stmt.body) {
+            compile(statement);
+        }
+        emitReturn();
+
+        FunctionState compiled = current;
+        current = current.enclosing;
+        compiled.function.setUpvalueCount(compiled.upvalues.size());
+
+        line = stmt.name.line;
+        emitOpShort(OpCode.CLOSURE, makeConstant(compiled.function));
+        for (Upvalue upvalue : compiled.upvalues) {
+            emitByte(upvalue.isLocal ? 1 : 0);
+            emitByte(upvalue.index);
+        }
+    }
+
+    private void compileArguments(List<Expr> arguments) {
+        for (Expr argument : arguments) {
+            compile(argument);
+        }
+    }
+
+    private void namedVariable(Token name) {
+        line = name.line;
+
+        int arg = resolveLocal(current, name);
+        if (arg != -1) {
+            emitBytes(OpCode.GET_LOCAL, arg);
+        } else if ((arg = resolveUpvalue(current, name)) != -1) {
+            emitBytes(OpCode.GET_UPVALUE, arg);
+        } else {
+            emitOpShort(OpCode.GET_GLOBAL, makeConstant(name.lexeme));
+        }
+    }
+
+    private int resolveLocal(FunctionState state, Token name) {
+        for (int i = state.locals.size() - 1; i >= 0; i--) {
+            Local local = state.locals.get(i);
+            if (local.depth != -1 && local.name.equals(name.lexeme)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private int resolveUpvalue(FunctionState state, Token name) {
+        if (state.enclosing == null) return -1;
+
+        int local = resolveLocal(state.enclosing, name);
+        if (local != -1) {
+            state.enclosing.locals.get(local).isCaptured = true;
+            return addUpvalue(state, name, local, true);
+        }
+
+        int upvalue = resolveUpvalue(state.enclosing, name);
+        if (upvalue != -1) {
+            return addUpvalue(state, name, upvalue, false);
+        }
+
+        return -1;
+    }
+
+    private int addUpvalue(FunctionState state, Token name, int index,
+                           boolean isLocal) {
+        for (int i = 0; i < state.upvalues.size(); i++) {
+            Upvalue upvalue = state.upvalues.get(i);
+            if (upvalue.index == index && upvalue.isLocal == isLocal) {
+                return i;
+            }
+        }
+
+        if (state.upvalues.size() == MAX_UPVALUES) {
+            Main.error(name, "Too many closure variables in function.");
+            return 0;
+        }
+
+        state.upvalues.add(new Upvalue(index, isLocal));
+        return state.upvalues.size() - 1;
+    }
+
+    private void declareVariable(Token name) {
+        if (current.scopeDepth == 0) return;
+
+        if (current.locals.size() == MAX_LOCALS) {
+            Main.error(name, "Too many local variables in function.");
+            return;
+        }
+        addLocal(name.lexeme);
+    }
+
+    private void addLocal(String name) {
+        current.locals.add(new Local(name, -1));
+    }
+
+    private void markInitialized() {
+        if (current.scopeDepth == 0) return;
+        current.locals.get(current.locals.size() - 1).depth = current.scopeDepth;
+    }
+
+    private void defineVariable(int global) {
+        if (current.scopeDepth > 0) {
+            markInitialized();
+            return;
+        }
+
+        emitOpShort(OpCode.DEFINE_GLOBAL, global);
+    }
+
+    private void beginScope() {
+        current.scopeDepth++;
+    }
+
+    private void endScope() {
+        current.scopeDepth--;
+
+        List<Local> locals = current.locals;
+        while (!locals.isEmpty() &&
+                locals.get(locals.size() - 1).depth > current.scopeDepth) {
+            if (locals.get(locals.size() - 1).isCaptured) {
+                emitByte(OpCode.CLOSE_UPVALUE);
+            } else {
+                emitByte(OpCode.POP);
+            }
+            locals.remove(locals.size() - 1);
+        }
+    }
+
+    private LoopState beginLoop(int start) {
+        current.loop = new LoopState(current.loop, current.locals.size(),
+                start);
+        return current.loop;
+    }
+
+    private void endLoop(LoopState loop) {
+        patchJumps(loop.breaks);
+        current.loop = loop.enclosing;
+    }
+
+    // Pops the locals above 'count' at runtime; the compiler keeps them
+    // until their scope ends.
+    private void discardLocals(int count) {
+        for (int i = current.locals.size() - 1; i >= count; i--) {
+            if (current.locals.get(i).isCaptured) {
+                emitByte(OpCode.CLOSE_UPVALUE);
+            } else {
+                emitByte(OpCode.POP);
+            }
+        }
+    }
+
+    private int makeConstant(Object value) {
+        int constant = current.function.chunk().addConstant(value);
+        if (constant > 0xffff) {
+            Main.error(line, "Too many constants in one chunk.");
+            return 0;
+        }
+
+        return constant;
+    }
+
+    private int makeNumber(double value) {
+        return checkNumber(current.function.chunk().addNumber(value));
+    }
+
+    private int makeInteger(long value) {
+        return checkNumber(current.function.chunk().addInteger(value));
+    }
+
+    private int checkNumber(int constant) {
+        if (constant > 0xffff) {
+            Main.error(line, "Too many constants in one chunk.");
+            return 0;
+        }
+
+        return constant;
+    }
+
+    private void emitByte(int value) {
+        current.function.chunk().write(value, line);
+    }
+
+    private void emitBytes(int first, int second) {
+        emitByte(first);
+        emitByte(second);
+    }
+
+    private void emitOpShort(int op, int operand) {
+        emitByte(op);
+        emitByte((operand >> 8) & 0xff);
+        emitByte(operand & 0xff);
+    }
+
+    private int emitJump(int op) {
+        emitByte(op);
+        emitByte(0xff);
+        emitByte(0xff);
+        return current.function.chunk().count() - 2;
+    }
+
+    private void patchJump(int offset) {
+        Chunk chunk = current.function.chunk();
+        int jump = chunk.count() - offset - 2;
+        if (jump > 0xffff) {
+            Main.error(line, "Too much code to jump over.");
+        }
+
+        chunk.patch(offset, (jump >> 8) & 0xff);
+        chunk.patch(offset + 1, jump & 0xff);
+    }
+
+    private void patchJumps(List<Integer> offsets) {
+        for (int offset : offsets) {
+            patchJump(offset);
+        }
+    }
+
+    private void emitLoop(int loopStart) {
+        emitByte(OpCode.LOOP);
+
+        int offset = current.function.chunk().count() - loopStart + 2;
+        if (offset > 0xffff) Main.error(line, "Loop body too large.");
+
+        emitByte((offset >> 8) & 0xff);
+        emitByte(offset & 0xff);
+    }
+
+    private void emitReturn() {
+        if (current.type == FunctionType.INITIALIZER) {
+            emitBytes(OpCode.GET_LOCAL, 0);
+        } else {
+            emitByte(OpCode.NIL);
+        }
+
+        emitByte(OpCode.RETURN);
+    }
+}
@@ -0,0 +1,14 @@
+package com.interpreter.rpdc;
+
+// Where a new closure finds one of the variables it uses: slot 'index' of
+// the scope 'depth' levels up from where the function is declared, or, when
+// depth is -1, upvalue 'index' of the function declaring it.
+class Capture {
+    final int depth;
+    final int index;
+
+    Capture(int depth, int index) {
+        this.depth = depth;
+        this.index = index;
+    }
+}
@@ -0,0 +1,13 @@
+package com.interpreter.rpdc;
+
+// How a statement finished. Control leaving early is handed back up
+// through the statements instead of being thrown.
+enum Completion {
+    NORMAL,
+    // An 'intoarce' ran; Interpreter.returnValue holds its value, or
+    // tailFunction and tailFrame the call to make in place of this one.
+    RETURN,
+    // 'opreste' and 'continua', taken by the innermost loop.
+    BREAK,
+    CONTINUE
+}
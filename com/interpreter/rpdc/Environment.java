@@ -1,26 +1,47 @@
 package com.interpreter.rpdc;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 public class Environment {
-    final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    // A local holding a number the interpreter computed without boxing has
+    // one of these tags in its slot and the value in 'numbers': the long
+    // itself, or the bits of a double. Reading it as an Object boxes it.
+    static final Object LONG = new Object();
+    static final Object DOUBLE = new Object();
+
+    // Not final so a pooled scope can be reattached; see Interpreter.visitBlockStmt.
+    Environment enclosing;
+    // Globals stay keyed by name, locals live in the slots the Resolver assigned.
+    private final Map<String, Object> values;
+    // Standard library modules the program has read, kept apart from its
+    // own globals; a global of the same name hides the module.
+    private final Map<String, RpdcInstance> modules;
+    private final Object[] slots;
+    // Only allocated once a slot holds an unboxed number.
+    private long[] numbers = null;
 
     Environment(){
         enclosing = null;
+        values = new HashMap<>();
+        modules = new HashMap<>();
+        slots = null;
     }
 
-    Environment(Environment enclosing) {
+    Environment(Environment enclosing, int size) {
         this.enclosing = enclosing;
+        values = null;
+        modules = null;
+        slots = new Object[size];
     }
 
     Object get(Token name){
-        if(values.containsKey(name.lexeme)){
-            return values.get(name.lexeme);
-        }
+        Object value = values.get(name.lexeme);
+        if (value != null || values.containsKey(name.lexeme)) return value;
 
-        if(enclosing != null)   return enclosing.get(name);
+        RpdcInstance module = module(name.lexeme);
+        if (module != null) return module;
 
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
     }
@@ -29,6 +50,23 @@ public class Environment {
         values.put(name, value);
     }
 
+    void define(int slot, Object value){
+        slots[slot] = value;
+    }
+
+    void defineNumber(int slot, long value, boolean isDouble) {
+        if (numbers == null) numbers = new long[slots.length];
+        slots[slot] = isDouble ? DOUBLE : LONG;
+        numbers[slot] = value;
+    }
+
+    // Called when a pooled frame or scope goes back to its spare slot, so
+    // the values of its last run don't stay reachable from the AST.
+    void clear() {
+        Arrays.fill(slots, null);
+        enclosing = null;
+    }
+
     Environment ancestor(int distance) {
         Environment environment = this;
         for (int i = 0; i < distance; i++) {
@@ -38,25 +76,78 @@ public class Environment {
         return environment;
     }
 
-    Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
+    // Slots of captured variables that can change hold a Box; these read
+    // and write through it.
+    Object getAt(int distance, int slot) {
+        Environment environment = ancestor(distance);
+        Object value = environment.slots[slot];
+        if (value instanceof Box) return ((Box)value).value;
+        return environment.box(slot, value);
+    }
+
+    // The slot as stored: possibly a Box, LONG or DOUBLE.
+    Object rawAt(int distance, int slot) {
+        return ancestor(distance).slots[slot];
     }
 
-    void assignAt(int distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme, value);
+    // The number in a slot whose raw value is LONG or DOUBLE.
+    long numberAt(int distance, int slot) {
+        return ancestor(distance).numbers[slot];
     }
 
+    void assignAt(int distance, int slot, Object value) {
+        Object[] slots = ancestor(distance).slots;
+        if (slots[slot] instanceof Box) {
+            ((Box)slots[slot]).value = value;
+        } else {
+            slots[slot] = value;
+        }
+    }
+
+    // False, changing nothing, if the variable is a captured one kept in a
+    // Box; those always hold objects.
+    boolean assignNumberAt(int distance, int slot, long value,
+                           boolean isDouble) {
+        Environment environment = ancestor(distance);
+        if (environment.slots[slot] instanceof Box) return false;
+        environment.defineNumber(slot, value, isDouble);
+        return true;
+    }
+
+    // What a closure copies: the value itself, or the Box holding it.
+    Object captureAt(int distance, int slot) {
+        Environment environment = ancestor(distance);
+        return environment.box(slot, environment.slots[slot]);
+    }
+
+    private Object box(int slot, Object value) {
+        if (value == LONG) return numbers[slot];
+        if (value == DOUBLE) return Double.longBitsToDouble(numbers[slot]);
+        return value;
+    }
+
+    // Only the program's own globals can be assigned. A module can't,
+    // whether or not it has been read yet.
     void assign(Token name, Object value) {
         if (values.containsKey(name.lexeme)){
             values.put(name.lexeme, value);
             return;
         }
 
-        if(enclosing != null){
-            enclosing.assign(name, value);
-            return;
+        if (Biblioteca.isModule(name.lexeme)) {
+            throw new RuntimeError(name,
+                    "Can't assign to the module '" + name.lexeme + "'.");
         }
-
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
     }
+
+    // A standard library module is only built the first time it is read.
+    private RpdcInstance module(String name) {
+        RpdcInstance module = modules.get(name);
+        if (module == null) {
+            module = Biblioteca.load(name);
+            if (module != null) modules.put(name, module);
+        }
+        return module;
+    }
 }
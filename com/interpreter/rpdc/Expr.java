@@ -4,19 +4,36 @@ import java.util.List;
 
 abstract class Expr {
     interface Visitor<R> {
+    R visitArrayExpr(Array expr);
     R visitAssignExpr(Assign expr);
     R visitBinaryExpr(Binary expr);
     R visitCallExpr(Call expr);
     R visitGetExpr(Get expr);
     R visitGroupingExpr(Grouping expr);
+    R visitIndexExpr(Index expr);
     R visitLiteralExpr(Literal expr);
     R visitLogicalExpr(Logical expr);
     R visitSetExpr(Set expr);
+    R visitSetIndexExpr(SetIndex expr);
     R visitSuperExpr(Super expr);
     R visitThisExpr(This expr);
     R visitUnaryExpr(Unary expr);
     R visitVariableExpr(Variable expr);
     }
+  static class Array extends Expr {
+        Array(Token bracket, List<Expr> elements) {
+            this.bracket = bracket;
+            this.elements = elements;
+        }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitArrayExpr(this);
+    }
+
+        final Token bracket;
+        final List<Expr> elements;
+    }
   static class Assign extends Expr {
         Assign(Token name, Expr value) {
             this.name = name;
@@ -30,6 +47,10 @@ abstract class Expr {
 
         final Token name;
         final Expr value;
+
+        int depth = -1;
+        int slot;
+        int upvalue = -1;
     }
   static class Binary extends Expr {
         Binary(Expr left, Token operator, Expr right) {
@@ -46,6 +67,8 @@ abstract class Expr {
         final Expr left;
         final Token operator;
         final Expr right;
+
+        BinaryNode node = BinaryNode.UNINITIALIZED;
     }
   static class Call extends Expr {
         Call(Expr callee, Token paren, List<Expr> arguments) {
@@ -76,6 +99,9 @@ abstract class Expr {
 
         final Expr object;
         final Token name;
+
+        Shape shape;
+        int index;
     }
   static class Grouping extends Expr {
         Grouping(Expr expression) {
@@ -89,6 +115,22 @@ abstract class Expr {
 
         final Expr expression;
     }
+  static class Index extends Expr {
+        Index(Expr object, Token bracket, Expr index) {
+            this.object = object;
+            this.bracket = bracket;
+            this.index = index;
+        }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitIndexExpr(this);
+    }
+
+        final Expr object;
+        final Token bracket;
+        final Expr index;
+    }
   static class Literal extends Expr {
         Literal(Object value) {
             this.value = value;
@@ -132,6 +174,28 @@ abstract class Expr {
         final Expr object;
         final Token name;
         final Expr value;
+
+        Shape shape;
+        Shape transition;
+        int index;
+    }
+  static class SetIndex extends Expr {
+        SetIndex(Expr object, Token bracket, Expr index, Expr value) {
+            this.object = object;
+            this.bracket = bracket;
+            this.index = index;
+            this.value = value;
+        }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitSetIndexExpr(this);
+    }
+
+        final Expr object;
+        final Token bracket;
+        final Expr index;
+        final Expr value;
     }
   static class Super extends Expr {
         Super(Token keyword, Token method) {
@@ -146,6 +210,9 @@ abstract class Expr {
 
         final Token keyword;
         final Token method;
+
+        int upvalue = -1;
+        Expr.This receiver;
     }
   static class This extends Expr {
         This(Token keyword) {
@@ -158,6 +225,10 @@ abstract class Expr {
     }
 
         final Token keyword;
+
+        int depth = -1;
+        int slot;
+        int upvalue = -1;
     }
   static class Unary extends Expr {
         Unary(Token operator, Expr right) {
@@ -184,6 +255,10 @@ abstract class Expr {
     }
 
         final Token name;
+
+        int depth = -1;
+        int slot;
+        int upvalue = -1;
     }
 
     abstract <R> R accept(Visitor<R> visitor);
@@ -6,10 +6,31 @@ import java.util.List;
 import java.util.Map;
 
 public class Interpreter implements Expr.Visitor<Object>,
-                                    Stmt.Visitor<Void> {
+                                    Stmt.Visitor<Completion> {
+    private static final Object[] NO_UPVALUES = new Object[0];
+
     final Environment globals = new Environment();
+    // Set by Main before anything runs.
+    Output output;
     private Environment environment = globals;
-    private final Map<Expr, Integer> locals = new HashMap<>();
+    // Captured variables of the function running now.
+    private Object[] upvalues = NO_UPVALUES;
+    boolean specializeNodes = false;
+
+    // Rough Java stack taken by one call of a user function, nested
+    // expressions included; measured at 1.3 to 3 KB. Calls more than
+    // budget / CALL_BYTES deep stop with a "Stack overflow." error, usually
+    // well before the stack Main gives the interpreter runs out;
+    // visitCallExpr reports the same error if it runs out first.
+    static final long CALL_BYTES = 4096;
+    int callDepth = 0;
+    int maxCallDepth = Integer.MAX_VALUE;
+
+    // Set by 'intoarce' along with Completion.RETURN and taken by the
+    // function being returned from.
+    Object returnValue;
+    RpdcFunction tailFunction;
+    Environment tailFrame;
 
     Interpreter() {
         globals.define("clock", new RpdcCallable() {
@@ -26,15 +47,81 @@ public class Interpreter implements Expr.Visitor<Object>,
             @Override
             public String toString() {return "<native fn>"; }
         });
+        globals.define("tablou", new NativeFunction(1, Interpreter::newArray));
+        globals.define("lungime", new NativeFunction(1, Interpreter::length));
+        globals.define("adauga", new NativeFunction(2, Interpreter::append));
+        globals.define("dictionar", new NativeFunction(0,
+                (interpreter, arguments) -> new RpdcDictionary()));
+        globals.define("contine", new NativeFunction(2, Interpreter::contains));
+        globals.define("sterge", new NativeFunction(2, Interpreter::remove));
+        globals.define("chei", new NativeFunction(1, Interpreter::keys));
+    }
+
+    // tablou(n): an array of n zeroes.
+    private static Object newArray(Interpreter interpreter,
+                                   List<Object> arguments) {
+        Object size = arguments.get(0);
+        if (!(size instanceof Long) || (long)size < 0 ||
+                (long)size > Integer.MAX_VALUE - 8) {
+            throw new RuntimeError(null,
+                    "Array size must be a non-negative integer.");
+        }
+        return new RpdcArray((int)(long)size);
+    }
+
+    private static Object length(Interpreter interpreter,
+                                 List<Object> arguments) {
+        Object value = arguments.get(0);
+        if (value instanceof RpdcArray) return (long)((RpdcArray)value).size();
+        if (value instanceof RpdcDictionary) {
+            return (long)((RpdcDictionary)value).size();
+        }
+        if (RpdcString.isString(value)) return (long)RpdcString.length(value);
+        throw new RuntimeError(null,
+                "Can only take the length of an array, dictionary or string.");
+    }
+
+    // adauga(a, v): appends v to the array a.
+    private static Object append(Interpreter interpreter,
+                                 List<Object> arguments) {
+        if (!(arguments.get(0) instanceof RpdcArray)) {
+            throw new RuntimeError(null, "Can only append to an array.");
+        }
+        ((RpdcArray)arguments.get(0)).add(arguments.get(1));
+        return null;
+    }
+
+    private static Object contains(Interpreter interpreter,
+                                   List<Object> arguments) {
+        return dictionary(arguments.get(0)).contains(arguments.get(1));
+    }
+
+    // sterge(d, k): removes k from d; true if it was there.
+    private static Object remove(Interpreter interpreter,
+                                 List<Object> arguments) {
+        return dictionary(arguments.get(0)).remove(arguments.get(1));
+    }
+
+    // chei(d): the keys of d, in the order they were added.
+    private static Object keys(Interpreter interpreter,
+                               List<Object> arguments) {
+        return dictionary(arguments.get(0)).keys();
+    }
+
+    private static RpdcDictionary dictionary(Object value) {
+        if (value instanceof RpdcDictionary) return (RpdcDictionary)value;
+        throw new RuntimeError(null, "Expected a dictionary.");
     }
 
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = evaluate(expr.value);
 
-        Integer distance = locals.get(expr);
-        if (distance != null) {
-            environment.assignAt(distance, expr.name, value);
+        if (expr.depth >= 0) {
+            environment.assignAt(expr.depth, expr.slot, value);
+        } else if (expr.upvalue >= 0) {
+            // The Resolver boxes every captured variable that gets assigned.
+            ((Box)upvalues[expr.upvalue]).value = value;
         } else {
             globals.assign(expr.name, value);
         }
@@ -47,35 +134,46 @@ public class Interpreter implements Expr.Visitor<Object>,
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
 
-        switch (expr.operator.type){
+        if (specializeNodes) {
+            return expr.node.execute(this, expr, left, right);
+        }
+
+        return binary(expr.operator, left, right);
+    }
+
+    Object binary(Token operator, Object left, Object right) {
+        switch (operator.type){
             case MINUS:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left - (double)right;
+                checkNumberOperands(operator, left, right);
+                return Numbers.subtract(left, right);
             case SLASH:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left / (double)right;
+                checkNumberOperands(operator, left, right);
+                return Numbers.divide(left, right);
             case STAR:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left * (double)right;
+                checkNumberOperands(operator, left, right);
+                return Numbers.multiply(left, right);
+            case PROCENT:
+                checkNumberOperands(operator, left, right);
+                return Numbers.modulo(left, right);
             case PLUS:
-                if(left instanceof Double && right instanceof Double)
-                    return (double)left + (double)right;
-                if(left instanceof String && right instanceof String)
-                    return (String)left + (String)right;
+                if(Numbers.isNumber(left) && Numbers.isNumber(right))
+                    return Numbers.add(left, right);
+                if(RpdcString.isString(left) && RpdcString.isString(right))
+                    return RpdcString.concat(left, right);
 
-                throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings");
+                throw new RuntimeError(operator, "Operands must be two numbers or two strings");
             case MAI_MARE:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left > (double)right;
+                checkNumberOperands(operator, left, right);
+                return Numbers.less(right, left);
             case MAI_MARE_EGAL:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left >= (double)right;
+                checkNumberOperands(operator, left, right);
+                return Numbers.lessEqual(right, left);
             case MAI_MIC:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left < (double)right;
+                checkNumberOperands(operator, left, right);
+                return Numbers.less(left, right);
             case MAI_MIC_EGAL:
-                checkNumberOperands(expr.operator, left, right);
-                return (double)left <= (double)right;
+                checkNumberOperands(operator, left, right);
+                return Numbers.lessEqual(left, right);
             case NEGARE_EGAL:
                 return !isEqual(left, right);
             case EGAL_EGAL:
@@ -85,27 +183,204 @@ public class Interpreter implements Expr.Visitor<Object>,
         return null;
     }
 
+    @Override
+    public Object visitArrayExpr(Expr.Array expr) {
+        RpdcArray array = new RpdcArray();
+        for (Expr element : expr.elements) {
+            array.add(evaluate(element));
+        }
+        return array;
+    }
+
+    @Override
+    public Object visitIndexExpr(Expr.Index expr) {
+        Object object = evaluate(expr.object);
+        Object key = evaluate(expr.index);
+        // A key that isn't there reads as nimic.
+        if (object instanceof RpdcDictionary) {
+            return ((RpdcDictionary)object).get(key);
+        }
+
+        RpdcArray array = array(expr.bracket, object);
+        return array.get(index(expr.bracket, array, key));
+    }
+
+    @Override
+    public Object visitSetIndexExpr(Expr.SetIndex expr) {
+        Object object = evaluate(expr.object);
+        Object key = evaluate(expr.index);
+        if (object instanceof RpdcDictionary) {
+            Object value = evaluate(expr.value);
+            ((RpdcDictionary)object).put(key, value);
+            return value;
+        }
+
+        RpdcArray array = array(expr.bracket, object);
+        int index = index(expr.bracket, array, key);
+        Object value = evaluate(expr.value);
+        array.set(index, value);
+        return value;
+    }
+
+    private RpdcArray array(Token bracket, Object object) {
+        if (object instanceof RpdcArray) return (RpdcArray)object;
+        throw new RuntimeError(bracket,
+                "Only arrays and dictionaries can be indexed.");
+    }
+
+    private int index(Token bracket, RpdcArray array, Object index) {
+        if (!(index instanceof Long)) {
+            throw new RuntimeError(bracket, "Array index must be an integer.");
+        }
+
+        long i = (long)index;
+        if (i < 0 || i >= array.size()) {
+            throw new RuntimeError(bracket, "Array index " + i +
+                    " out of bounds for length " + array.size() + ".");
+        }
+        return (int)i;
+    }
+
     @Override
     public Object visitCallExpr(Expr.Call expr) {
-        Object callee = evaluate(expr.callee);
+        try {
+            if (expr.callee instanceof Expr.Get) {
+                return invoke(expr, (Expr.Get)expr.callee);
+            }
 
-        List<Object> arguments = new ArrayList<>();
-        for(Expr argument : expr.arguments){
-            arguments.add(evaluate(argument));
+            return call(expr, evaluate(expr.callee));
+        } catch (RuntimeError error) {
+            // RpdcFunction.run reports a call too deep without a token.
+            if (error.token != null) throw error;
+            throw new RuntimeError(expr.paren, error.getMessage());
+        } catch (StackOverflowError error) {
+            // maxCallDepth assumes CALL_BYTES per call; a body nested deep
+            // enough can use up the Java stack before that.
+            throw new RuntimeError(expr.paren, "Stack overflow.");
         }
+    }
+
+    // obj.m(...) runs the method straight on the receiver instead of going
+    // through visitGetExpr, which would have to bind it first.
+    private Object invoke(Expr.Call expr, Expr.Get get) {
+        RpdcInstance instance = instance(get);
+        int index = fieldIndex(instance, get);
+        if (index >= 0) return call(expr, instance.fields[index]);
+
+        RpdcFunction method = method(instance, get);
+        if (expr.arguments.size() != method.arity()) {
+            return call(expr, method.bind(instance));
+        }
+
+        return method.run(this, frame(expr, method, instance), instance);
+    }
 
+    // 'intoarce f(...)': evaluates the callee and its arguments into a new
+    // frame but leaves running it to RpdcFunction.run, which does so in
+    // place of the current call. Callees that aren't user functions, and
+    // calls with the wrong number of arguments, go through call() as usual.
+    private void tailCall(Expr.Call expr) {
+        Object callee;
+        if (expr.callee instanceof Expr.Get) {
+            Expr.Get get = (Expr.Get)expr.callee;
+            RpdcInstance instance = instance(get);
+            int index = fieldIndex(instance, get);
+            if (index >= 0) {
+                callee = instance.fields[index];
+            } else {
+                callee = method(instance, get).bind(instance);
+            }
+        } else {
+            callee = evaluate(expr.callee);
+        }
+
+        if (callee instanceof RpdcFunction) {
+            RpdcFunction function = (RpdcFunction)callee;
+            if (expr.arguments.size() == function.arity()) {
+                tailFrame = frame(expr, function, function.receiver);
+                tailFunction = function;
+                return;
+            }
+        }
+
+        returnValue = call(expr, callee);
+    }
+
+    private RpdcInstance instance(Expr.Get get) {
+        Object object = evaluate(get.object);
+        if (!(object instanceof RpdcInstance)) {
+            throw new RuntimeError(get.name,
+                    "Only instances have properties.");
+        }
+        return (RpdcInstance)object;
+    }
+
+    private RpdcFunction method(RpdcInstance instance, Expr.Get get) {
+        RpdcFunction method = instance.klass.findMethod(get.name.lexeme);
+        if (method == null) {
+            throw new RuntimeError(get.name,
+                    "Undefined property '" + get.name.lexeme + "'.");
+        }
+        return method;
+    }
+
+    private Environment frame(Expr.Call expr, RpdcFunction function,
+                              RpdcInstance receiver) {
+        Environment frame = function.frame(receiver);
+        int slot = function.firstParam();
+        for (Expr argument : expr.arguments) {
+            frame.define(slot++, evaluate(argument));
+        }
+        return frame;
+    }
+
+    private Object call(Expr.Call expr, Object callee) {
+        List<Expr> arguments = expr.arguments;
+        try {
+            switch (arguments.size()) {
+                case 0:
+                    return callable(expr, callee, 0).call0(this);
+                case 1: {
+                    Object a = evaluate(arguments.get(0));
+                    return callable(expr, callee, 1).call1(this, a);
+                }
+                case 2: {
+                    Object a = evaluate(arguments.get(0));
+                    Object b = evaluate(arguments.get(1));
+                    return callable(expr, callee, 2).call2(this, a, b);
+                }
+                case 3: {
+                    Object a = evaluate(arguments.get(0));
+                    Object b = evaluate(arguments.get(1));
+                    Object c = evaluate(arguments.get(2));
+                    return callable(expr, callee, 3).call3(this, a, b, c);
+                }
+            }
+
+            List<Object> values = new ArrayList<>();
+            for(Expr argument : arguments){
+                values.add(evaluate(argument));
+            }
+            return callable(expr, callee, values.size()).call(this, values);
+        } catch (RuntimeError error) {
+            // Natives throw without a token; report those at the call.
+            if (error.token != null) throw error;
+            throw new RuntimeError(expr.paren, error.getMessage());
+        }
+    }
+
+    private RpdcCallable callable(Expr.Call expr, Object callee, int argCount) {
         if(!(callee instanceof RpdcCallable)){
             throw new RuntimeError(expr.paren, "Can only call functions and classes.");
         }
 
         RpdcCallable function = (RpdcCallable) callee;
-        if(arguments.size() != function.arity()){
+        if(argCount != function.arity()){
             throw new RuntimeError(expr.paren, "Expected " +
                     function.arity() + " arguments but got " +
-                    arguments.size() +".");
+                    argCount +".");
         }
-
-        return function.call(this, arguments);
+        return function;
     }
 
     @Override
@@ -138,7 +413,7 @@ public class Interpreter implements Expr.Visitor<Object>,
         switch (expr.operator.type) {
             case MINUS:
                 checkNumberOperand(expr.operator, right);
-                return -(double) right;
+                return Numbers.negate(right);
             case NEGARE:
                 return !isTruthy(right);
         };
@@ -147,22 +422,22 @@ public class Interpreter implements Expr.Visitor<Object>,
     }
 
     @Override
-    public Void visitIfStmt(Stmt.If stmt){
-        if(isTruthy(evaluate(stmt.condition))){
-            execute(stmt.thenBranch);
+    public Completion visitIfStmt(Stmt.If stmt){
+        if(isTrue(stmt.condition)){
+            return execute(stmt.thenBranch);
         } else if (stmt.elseBranch != null){
-            execute(stmt.elseBranch);
+            return execute(stmt.elseBranch);
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return lookUpVariable(expr.name, expr);
+        return lookUpVariable(expr.name, expr.depth, expr.slot, expr.upvalue);
     }
 
     @Override
-    public Void visitClassStmt(Stmt.Class stmt) {
+    public Completion visitClassStmt(Stmt.Class stmt) {
         Object superclass = null;
         if (stmt.superclass != null) {
             superclass = evaluate(stmt.superclass);
@@ -172,40 +447,73 @@ public class Interpreter implements Expr.Visitor<Object>,
             }
         }
 
-        environment.define(stmt.name.lexeme, null);
+        // Methods that name the class capture it before it exists.
+        Box box = null;
+        if (stmt.boxed) {
+            box = new Box(null);
+            define(stmt.name, stmt.slot, box);
+        }
 
         if (stmt.superclass != null) {
-            environment = new Environment(environment);
-            environment.define("super", superclass);
+            environment = new Environment(environment, 1);
+            environment.define(0, superclass);
         }
 
+        // Inherited methods are copied in first so findMethod never has to
+        // walk the superclass chain.
         Map<String, RpdcFunction> methods = new HashMap<>();
+        if (superclass != null) {
+            methods.putAll(((RpdcClass)superclass).methods);
+        }
         for (Stmt.Function method : stmt.methods) {
-            RpdcFunction function = new RpdcFunction(method, environment,
-                    method.name.lexeme.equals("init"));
+            FunctionType type = FunctionType.METHOD;
+            if (method.name.lexeme.equals("init")) {
+                type = FunctionType.INITIALIZER;
+            }
+            RpdcFunction function = new RpdcFunction(method,
+                    capture(method.captures), type);
             methods.put(method.name.lexeme, function);
         }
         RpdcClass klass = new RpdcClass(stmt.name.lexeme,
-                (RpdcClass)superclass, methods);
+                (RpdcClass)superclass, Map.copyOf(methods));
 
         if (superclass != null) {
             environment = environment.enclosing;
         }
 
-        environment.assign(stmt.name, klass);
-        return null;
+        if (box != null) {
+            box.value = klass;
+        } else {
+            define(stmt.name, stmt.slot, klass);
+        }
+        return Completion.NORMAL;
     }
 
     @Override
     public Object visitGetExpr(Expr.Get expr) {
         Object object = evaluate(expr.object);
         if (object instanceof RpdcInstance) {
-            return ((RpdcInstance) object).get(expr.name);
+            RpdcInstance instance = (RpdcInstance)object;
+            int index = fieldIndex(instance, expr);
+            if (index >= 0) return instance.fields[index];
+
+            return instance.get(expr.name);
         }
         throw new RuntimeError(expr.name,
                 "Only instances have properties.");
     }
 
+    private int fieldIndex(RpdcInstance instance, Expr.Get expr) {
+        if (instance.shape == expr.shape) return expr.index;
+
+        int index = instance.shape.indexOf(expr.name.lexeme);
+        if (index >= 0) {
+            expr.shape = instance.shape;
+            expr.index = index;
+        }
+        return index;
+    }
+
     @Override
     public Object visitSetExpr(Expr.Set expr) {
         Object object = evaluate(expr.object);
@@ -214,18 +522,24 @@ public class Interpreter implements Expr.Visitor<Object>,
                     "Only instances have fields.");
         }
         Object value = evaluate(expr.value);
-        ((RpdcInstance)object).set(expr.name, value);
+
+        RpdcInstance instance = (RpdcInstance)object;
+        if (instance.shape == expr.shape) {
+            instance.put(expr.index, expr.transition, value);
+        } else {
+            Shape shape = instance.shape;
+            instance.set(expr.name, value);
+            expr.shape = shape;
+            expr.transition = instance.shape;
+            expr.index = instance.shape.indexOf(expr.name.lexeme);
+        }
         return value;
     }
 
     @Override
     public Object visitSuperExpr(Expr.Super expr) {
-        int distance = locals.get(expr);
-        RpdcClass superclass = (RpdcClass) environment.getAt(
-                distance, "super");
-
-        RpdcInstance object = (RpdcInstance)environment.getAt(
-                distance - 1, "acesta");
+        RpdcClass superclass = (RpdcClass)upvalue(expr.upvalue);
+        RpdcInstance object = (RpdcInstance)evaluate(expr.receiver);
 
         RpdcFunction method = superclass.findMethod(expr.method.lexeme);
 
@@ -239,18 +553,45 @@ public class Interpreter implements Expr.Visitor<Object>,
 
     @Override
     public Object visitThisExpr(Expr.This expr) {
-        return lookUpVariable(expr.keyword, expr);
+        return lookUpVariable(expr.keyword, expr.depth, expr.slot,
+                expr.upvalue);
     }
 
-    private Object lookUpVariable(Token name, Expr expr) {
-        Integer distance = locals.get(expr);
-        if (distance != null) {
-            return environment.getAt(distance, name.lexeme);
+    private Object lookUpVariable(Token name, int depth, int slot,
+                                  int upvalue) {
+        if (depth >= 0) {
+            return environment.getAt(depth, slot);
+        } else if (upvalue >= 0) {
+            return upvalue(upvalue);
         } else {
             return globals.get(name);
         }
     }
 
+    private Object upvalue(int index) {
+        Object value = upvalues[index];
+        if (value instanceof Box) return ((Box)value).value;
+        return value;
+    }
+
+    // Copies what a new closure uses out of the current scopes, or out of
+    // the running function's own upvalues for variables from further out.
+    private Object[] capture(Capture[] captures) {
+        if (captures.length == 0) return NO_UPVALUES;
+
+        Object[] captured = new Object[captures.length];
+        for (int i = 0; i < captures.length; i++) {
+            Capture capture = captures[i];
+            if (capture.depth < 0) {
+                captured[i] = upvalues[capture.index];
+            } else {
+                captured[i] = environment.captureAt(capture.depth,
+                        capture.index);
+            }
+        }
+        return captured;
+    }
+
     void interpret(List<Stmt> statements){
         try{
             for(Stmt statement : statements){
@@ -265,113 +606,521 @@ public class Interpreter implements Expr.Visitor<Object>,
         return expr.accept(this);
     }
 
-    private void execute(Stmt stmt){
-        stmt.accept(this);
+    // Statements that only need a number, a condition or an assignment to
+    // a local go through these, so arithmetic over locals and literals
+    // doesn't box a Long or Double for every intermediate result.
+    // evaluateNumber only takes expressions without side effects, so when
+    // it gives up (a string, a BigInteger, an overflow) the caller simply
+    // evaluates the expression again the usual way.
+
+    // The result of a successful evaluateNumber: a long, or the bits of a
+    // double if numberIsDouble.
+    private long number;
+    private boolean numberIsDouble;
+
+    private boolean evaluateNumber(Expr expr) {
+        if (expr instanceof Expr.Literal) {
+            return unbox(((Expr.Literal)expr).value);
+        } else if (expr instanceof Expr.Variable) {
+            Expr.Variable variable = (Expr.Variable)expr;
+            if (variable.depth < 0) {
+                return variable.upvalue >= 0 && unbox(upvalue(variable.upvalue));
+            }
+
+            Object value = environment.rawAt(variable.depth, variable.slot);
+            if (value == Environment.LONG || value == Environment.DOUBLE) {
+                number = environment.numberAt(variable.depth, variable.slot);
+                numberIsDouble = value == Environment.DOUBLE;
+                return true;
+            }
+            if (value instanceof Box) value = ((Box)value).value;
+            return unbox(value);
+        } else if (expr instanceof Expr.Grouping) {
+            return evaluateNumber(((Expr.Grouping)expr).expression);
+        } else if (expr instanceof Expr.Unary) {
+            Expr.Unary unary = (Expr.Unary)expr;
+            if (unary.operator.type != TokenType.MINUS ||
+                    !evaluateNumber(unary.right)) {
+                return false;
+            }
+            if (numberIsDouble) {
+                number = Double.doubleToRawLongBits(
+                        -Double.longBitsToDouble(number));
+                return true;
+            }
+            number = -number;
+            return number != Long.MIN_VALUE;
+        } else if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary)expr;
+            TokenType operator = binary.operator.type;
+            if (operator != TokenType.PLUS && operator != TokenType.MINUS &&
+                    operator != TokenType.STAR && operator != TokenType.SLASH &&
+                    operator != TokenType.PROCENT) {
+                return false;
+            }
+
+            if (!evaluateNumber(binary.left)) return false;
+            long left = number;
+            boolean leftIsDouble = numberIsDouble;
+            if (!evaluateNumber(binary.right)) return false;
+            if (!leftIsDouble && !numberIsDouble) {
+                return arithmetic(operator, left, number);
+            }
+
+            double x = leftIsDouble ? Double.longBitsToDouble(left) : left;
+            double y = numberIsDouble ? Double.longBitsToDouble(number) : number;
+            number = Double.doubleToRawLongBits(arithmetic(operator, x, y));
+            numberIsDouble = true;
+            return true;
+        }
+
+        return false;
+    }
+
+    private boolean unbox(Object value) {
+        if (value instanceof Long) {
+            number = (long)value;
+            numberIsDouble = false;
+            return true;
+        } else if (value instanceof Double) {
+            number = Double.doubleToRawLongBits((double)value);
+            numberIsDouble = true;
+            return true;
+        }
+        return false;
+    }
+
+    // Like Numbers, but gives up where Numbers would need a BigInteger.
+    private boolean arithmetic(TokenType operator, long x, long y) {
+        long result;
+        switch (operator) {
+            case PLUS:
+                result = x + y;
+                if (((x ^ result) & (y ^ result)) < 0) return false;
+                break;
+            case MINUS:
+                result = x - y;
+                if (((x ^ y) & (x ^ result)) < 0) return false;
+                break;
+            case STAR:
+                long high = Math.multiplyHigh(x, y);
+                result = x * y;
+                if (!((high == 0 && result >= 0) ||
+                        (high == -1 && result < 0))) {
+                    return false;
+                }
+                break;
+            case SLASH:
+                if (y != 0 && x % y == 0 && !(x == Long.MIN_VALUE && y == -1)) {
+                    result = x / y;
+                    break;
+                }
+                number = Double.doubleToRawLongBits((double)x / (double)y);
+                numberIsDouble = true;
+                return true;
+            default:
+                if (y == 0) {
+                    number = Double.doubleToRawLongBits(Double.NaN);
+                    numberIsDouble = true;
+                    return true;
+                }
+                result = x % y;
+                break;
+        }
+
+        number = result;
+        numberIsDouble = false;
+        return true;
+    }
+
+    private static double arithmetic(TokenType operator, double x, double y) {
+        switch (operator) {
+            case PLUS: return x + y;
+            case MINUS: return x - y;
+            case STAR: return x * y;
+            case SLASH: return x / y;
+            default: return x % y;
+        }
+    }
+
+    // isTruthy(evaluate(condition)), comparing two numbers without boxing
+    // them.
+    private boolean isTrue(Expr condition) {
+        if (condition instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary)condition;
+            TokenType operator = binary.operator.type;
+            if ((operator == TokenType.MAI_MIC ||
+                    operator == TokenType.MAI_MIC_EGAL ||
+                    operator == TokenType.MAI_MARE ||
+                    operator == TokenType.MAI_MARE_EGAL) &&
+                    evaluateNumber(binary.left)) {
+                long left = number;
+                boolean leftIsDouble = numberIsDouble;
+                if (evaluateNumber(binary.right)) {
+                    if (!leftIsDouble && !numberIsDouble) {
+                        return compare(operator, Long.compare(left, number));
+                    }
+                    double x = leftIsDouble ? Double.longBitsToDouble(left) : left;
+                    double y = numberIsDouble ? Double.longBitsToDouble(number) : number;
+                    switch (operator) {
+                        case MAI_MIC: return x < y;
+                        case MAI_MIC_EGAL: return x <= y;
+                        case MAI_MARE: return x > y;
+                        default: return x >= y;
+                    }
+                }
+            }
+        }
+
+        return isTruthy(evaluate(condition));
+    }
+
+    private static boolean compare(TokenType operator, int comparison) {
+        switch (operator) {
+            case MAI_MIC: return comparison < 0;
+            case MAI_MIC_EGAL: return comparison <= 0;
+            case MAI_MARE: return comparison > 0;
+            default: return comparison >= 0;
+        }
+    }
+
+    // Evaluates an expression whose value isn't used. An arithmetic result
+    // assigned to a local is stored unboxed.
+    private void discard(Expr expr) {
+        if (expr instanceof Expr.Assign) {
+            Expr.Assign assign = (Expr.Assign)expr;
+            if (assign.depth >= 0 && evaluateNumber(assign.value) &&
+                    environment.assignNumberAt(assign.depth, assign.slot,
+                            number, numberIsDouble)) {
+                return;
+            }
+        }
+
+        evaluate(expr);
     }
 
-    void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
+    private Completion execute(Stmt stmt){
+        return stmt.accept(this);
     }
 
-    void executeBlock(List<Stmt> statements, Environment environment){
+    private void define(Token name, int slot, Object value) {
+        if (slot < 0) {
+            environment.define(name.lexeme, value);
+        } else {
+            environment.define(slot, value);
+        }
+    }
+
+    Completion executeBlock(List<Stmt> statements, Environment environment){
         Environment previous = this.environment;
         try{
             this.environment = environment;
-
-            for(Stmt statement : statements){
-                execute(statement);
-            }
+            return executeAll(statements);
         } finally {
             this.environment = previous;
         }
     }
 
-    private boolean isTruthy(Object object){
+    // Sets both at once rather than going through executeBlock, to keep the
+    // Java stack used by each call small.
+    Completion executeBody(List<Stmt> statements, Environment environment,
+                           Object[] upvalues) {
+        Environment previousEnvironment = this.environment;
+        Object[] previousUpvalues = this.upvalues;
+        try {
+            this.environment = environment;
+            this.upvalues = upvalues;
+            return executeAll(statements);
+        } finally {
+            this.environment = previousEnvironment;
+            this.upvalues = previousUpvalues;
+        }
+    }
+
+    private Completion executeAll(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            Completion completion = statement.accept(this);
+            if (completion != Completion.NORMAL) return completion;
+        }
+        return Completion.NORMAL;
+    }
+
+    boolean isTruthy(Object object){
         if (object == null)     return false;
         if(object instanceof Boolean)   return (boolean)object;
         return true;
     }
 
-    private boolean isEqual(Object a, Object b){
+    static boolean isEqual(Object a, Object b){
         if (a == null && b == null)     return true;
         if(a == null)   return false;
+        // Two Doubles compare as before; 1 and 1.0 are the same number.
+        if (!(a instanceof Double && b instanceof Double) &&
+                Numbers.isNumber(a) && Numbers.isNumber(b)) {
+            return Numbers.equal(a, b);
+        }
 
-        return a.equals(b);
+        return RpdcString.flatten(a).equals(RpdcString.flatten(b));
     }
 
     private void checkNumberOperand(Token operator, Object operand){
-        if(operand instanceof Double)   return;
+        if(Numbers.isNumber(operand))   return;
         throw new RuntimeError(operator, "Operand must be a number.");
     }
 
     private void checkNumberOperands(Token operator, Object left, Object right){
-        if(left instanceof Double && right instanceof Double)   return;
+        if(Numbers.isNumber(left) && Numbers.isNumber(right))   return;
         throw new RuntimeError(operator, "Operands must be numbers.");
     }
 
-    private String stringify(Object object){
+    static String stringify(Object object){
         if(object == null)  return "nimic";
 
+        // Only whole numbers below 10^7 end in ".0"; see Output.println.
         if(object instanceof Double){
-            String text = object.toString();
-            if(text.endsWith(".0")){
-                text = text.substring(0, text.length() - 2);
+            double number = (double)object;
+            if (Math.abs(number) < 1e7 && number == (long)number) {
+                if (number == 0 && Double.doubleToRawLongBits(number) < 0) {
+                    return "-0";
+                }
+                return Long.toString((long)number);
             }
-            return text;
+            return Double.toString(number);
         }
 
         return object.toString();
     }
 
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
-        return null;
+    public Completion visitBlockStmt(Stmt.Block stmt) {
+        // The Resolver gave blocks that declare nothing no scope of their own.
+        if (stmt.slots == 0) return executeAll(stmt.statements);
+
+        // Closures copy what they use out of the scope, so the block keeps it
+        // for its next run. Taking it out while in use keeps recursion safe.
+        Environment scope = stmt.spare;
+        if (scope == null) {
+            scope = new Environment(environment, stmt.slots);
+        } else {
+            stmt.spare = null;
+            scope.enclosing = environment;
+        }
+
+        try {
+            return executeBlock(stmt.statements, scope);
+        } finally {
+            scope.clear();
+            stmt.spare = scope;
+        }
     }
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt) {
-        evaluate(stmt.expression);
-        return null;
+    public Completion visitBreakStmt(Stmt.Break stmt) {
+        return Completion.BREAK;
     }
 
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt) {
-        RpdcFunction function = new RpdcFunction(stmt, environment, false);
-        environment.define(stmt.name.lexeme, function);
-        return null;
+    public Completion visitContinueStmt(Stmt.Continue stmt) {
+        return Completion.CONTINUE;
     }
 
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt) {
+    public Completion visitExpressionStmt(Stmt.Expression stmt) {
+        discard(stmt.expression);
+        return Completion.NORMAL;
+    }
+
+    @Override
+    public Completion visitFunctionStmt(Stmt.Function stmt) {
+        // A function calling itself captures its own variable, so that
+        // variable needs to exist before the function does.
+        if (stmt.boxed) {
+            Box box = new Box(null);
+            define(stmt.name, stmt.slot, box);
+            box.value = new RpdcFunction(stmt, capture(stmt.captures),
+                    FunctionType.FUNCTION);
+            return Completion.NORMAL;
+        }
+
+        RpdcFunction function = new RpdcFunction(stmt,
+                capture(stmt.captures), FunctionType.FUNCTION);
+        define(stmt.name, stmt.slot, function);
+        return Completion.NORMAL;
+    }
+
+    @Override
+    public Completion visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
-        return null;
+        if (value instanceof Long) {
+            output.println((long)value);
+        } else if (value instanceof Double) {
+            output.println((double)value);
+        } else {
+            output.println(stringify(value));
+        }
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt) {
-        Object value = null;
-        if (stmt.value != null) value = evaluate(stmt.value);
-        throw new Return(value);
+    public Completion visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.tail) {
+            tailCall((Expr.Call)stmt.value);
+        } else if (stmt.value != null) {
+            returnValue = evaluate(stmt.value);
+        }
+        return Completion.RETURN;
     }
 
     @Override
-    public Void visitVarStmt(Stmt.Var stmt) {
+    public Completion visitVarStmt(Stmt.Var stmt) {
+        if (stmt.slot >= 0 && !stmt.boxed && stmt.initializer != null &&
+                evaluateNumber(stmt.initializer)) {
+            environment.defineNumber(stmt.slot, number, numberIsDouble);
+            return Completion.NORMAL;
+        }
+
         Object value = null;
         if(stmt.initializer != null){
             value = evaluate(stmt.initializer);
         }
 
-        environment.define(stmt.name.lexeme, value);
-        return null;
+        define(stmt.name, stmt.slot, stmt.boxed ? new Box(value) : value);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitWhileStmt(Stmt.While stmt) {
-        while(isTruthy(evaluate(stmt.condition))){
-            execute(stmt.body);
+    public Completion visitWhileStmt(Stmt.While stmt) {
+        while(isTrue(stmt.condition)){
+            Completion completion = execute(stmt.body);
+            if (completion == Completion.BREAK) break;
+            if (completion == Completion.RETURN) return completion;
         }
-        return null;
+        return Completion.NORMAL;
+    }
+
+    @Override
+    public Completion visitForStmt(Stmt.For stmt) {
+        Environment previous = environment;
+        try {
+            // One scope for the whole loop, only if the initializer declares.
+            if (stmt.slots > 0) {
+                environment = new Environment(environment, stmt.slots);
+            }
+            if (stmt.initializer != null) execute(stmt.initializer);
+
+            while (stmt.condition == null || isTrue(stmt.condition)) {
+                Completion completion = execute(stmt.body);
+                if (completion == Completion.BREAK) break;
+                if (completion == Completion.RETURN) return completion;
+                if (stmt.increment != null) discard(stmt.increment);
+            }
+        } finally {
+            environment = previous;
+        }
+        return Completion.NORMAL;
+    }
+
+    @Override
+    public Completion visitCountStmt(Stmt.Count stmt) {
+        Object from = evaluate(stmt.from);
+        Object to = evaluate(stmt.to);
+        Object by = stmt.step == null ? (Object)1L : evaluate(stmt.step);
+        if (!(Numbers.isNumber(from) && Numbers.isNumber(to) &&
+                Numbers.isNumber(by))) {
+            throw new RuntimeError(stmt.name, "Loop bounds must be numbers.");
+        }
+        if (Numbers.toDouble(by) == 0) {
+            throw new RuntimeError(stmt.name, "Loop step can't be zero.");
+        }
+
+        // A captured counter lives in one Box that every iteration updates.
+        Box box = stmt.boxed ? new Box(null) : null;
+        Environment loop = new Environment(environment, 1);
+        if (box != null) loop.define(0, box);
+        Environment previous = environment;
+        try {
+            environment = loop;
+            if (from instanceof Long && to instanceof Long &&
+                    by instanceof Long) {
+                return countLong(stmt, loop, box, (long)from, (long)to,
+                        (long)by);
+            }
+            return countDouble(stmt, loop, box, Numbers.toDouble(from),
+                    Numbers.toDouble(to), Numbers.toDouble(by));
+        } finally {
+            environment = previous;
+        }
+    }
+
+    // The counter stays a primitive, unboxed in the loop's slot unless a
+    // closure captures it; it is only read back if the body assigned to the
+    // loop variable.
+    private Completion countLong(Stmt.Count stmt, Environment loop, Box box,
+                                 long counter, long limit, long step) {
+        while (step > 0 ? counter <= limit : counter >= limit) {
+            Object value = null;
+            if (box != null) {
+                value = counter;
+                box.value = value;
+            } else {
+                loop.defineNumber(0, counter, false);
+            }
+            Completion completion = execute(stmt.body);
+            if (completion == Completion.BREAK) break;
+            if (completion == Completion.RETURN) return completion;
+
+            boolean unchanged = box != null ? box.value == value
+                    : loop.rawAt(0, 0) == Environment.LONG &&
+                            loop.numberAt(0, 0) == counter;
+            if (!unchanged) {
+                Object current = loop.getAt(0, 0);
+                checkCounter(stmt, current);
+                if (!(current instanceof Long)) {
+                    // Assigned a fraction: go on counting in doubles.
+                    return countDouble(stmt, loop, box,
+                            Numbers.toDouble(current) + step, limit, step);
+                }
+                counter = (long)current;
+            }
+
+            long next = counter + step;
+            // Overflowing a long means the limit was passed.
+            if ((next > counter) != (step > 0)) break;
+            counter = next;
+        }
+        return Completion.NORMAL;
+    }
+
+    private Completion countDouble(Stmt.Count stmt, Environment loop, Box box,
+                                   double counter, double limit, double step) {
+        while (step > 0 ? counter <= limit : counter >= limit) {
+            Object value = null;
+            long bits = Double.doubleToRawLongBits(counter);
+            if (box != null) {
+                value = counter;
+                box.value = value;
+            } else {
+                loop.defineNumber(0, bits, true);
+            }
+            Completion completion = execute(stmt.body);
+            if (completion == Completion.BREAK) break;
+            if (completion == Completion.RETURN) return completion;
+
+            boolean unchanged = box != null ? box.value == value
+                    : loop.rawAt(0, 0) == Environment.DOUBLE &&
+                            loop.numberAt(0, 0) == bits;
+            if (!unchanged) {
+                Object current = loop.getAt(0, 0);
+                checkCounter(stmt, current);
+                counter = Numbers.toDouble(current);
+            }
+            counter += step;
+        }
+        return Completion.NORMAL;
+    }
+
+    private void checkCounter(Stmt.Count stmt, Object counter) {
+        if (Numbers.isNumber(counter)) return;
+        throw new RuntimeError(stmt.name, "Loop counter must be a number.");
     }
 }
@@ -1,10 +1,15 @@
 package com.interpreter.rpdc;
 
+import com.interpreter.rpdc.vm.ObjFunction;
+import com.interpreter.rpdc.vm.VM;
+import com.interpreter.rpdc.vm.VmError;
+
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 
@@ -12,24 +17,118 @@ public class Main {
     static boolean hadError = false;
     static boolean hadRuntimeError = false;
     private static final Interpreter interpreter = new Interpreter();
+    private static VM vm = null;
+    private static boolean optimize = true;
+    private static long stackBudget = VM.DEFAULT_STACK_BUDGET;
+    private static Output output;
 
     public static void main(String[] args) throws IOException {
-        if(args.length > 1){
-            System.out.println("Usage: rpdc [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
-        } else {
-            runPrompt();
+        int first = 0;
+        boolean useVm = false;
+        Path outputFile = null;
+        Output.Flush flush = null;
+        int flushLimit = Output.DEFAULT_LIMIT;
+        while (first < args.length && args[first].startsWith("--")) {
+            if (args[first].equals("--vm")) {
+                useVm = true;
+            } else if (args[first].startsWith("--stiva=")) {
+                stackBudget = megabytes(args[first].substring(8));
+            } else if (args[first].equals("--fara-optimizari")) {
+                optimize = false;
+            } else if (args[first].equals("--specializare")) {
+                interpreter.specializeNodes = true;
+            } else if (args[first].startsWith("--iesire=")) {
+                outputFile = Paths.get(args[first].substring(9));
+            } else if (args[first].equals("--golire=linie")) {
+                flush = Output.Flush.LINE;
+            } else if (args[first].equals("--golire=final")) {
+                flush = Output.Flush.EXIT;
+            } else if (args[first].startsWith("--golire=")) {
+                flush = Output.Flush.SIZE;
+                flushLimit = kilobytes(args[first].substring(9));
+            } else {
+                usage();
+            }
+            first++;
+        }
+
+        if(args.length - first > 1) usage();
+
+        // The REPL shows each result as soon as it is printed.
+        boolean interactive = args.length == first;
+        if (flush == null) {
+            flush = interactive ? Output.Flush.LINE : Output.Flush.SIZE;
         }
+        output = outputFile == null ? Output.standard(flush, flushLimit)
+                                    : openOutput(outputFile, flush, flushLimit);
+        interpreter.output = output;
+        interpreter.maxCallDepth = (int)Math.min(Integer.MAX_VALUE,
+                stackBudget / Interpreter.CALL_BYTES);
+        if (useVm) vm = new VM(stackBudget, output);
+
+        try {
+            if (interactive) {
+                runPrompt();
+            } else {
+                runFile(args[first]);
+            }
+        } finally {
+            output.close();
+        }
+
+        if (output.error() != null) {
+            System.err.println("Could not write output: " +
+                    output.error().getMessage());
+            System.exit(74);
+        }
+        if (interactive) return;
+        if(hadError)    System.exit(65);
+        if(hadRuntimeError)     System.exit(70);
+    }
+
+    private static void usage() {
+        System.out.println("Usage: rpdc [--vm] [--stiva=<MB>] [--specializare] [--fara-optimizari]");
+        System.out.println("            [--iesire=<file>] [--golire=linie|final|<KB>] [script]");
+        System.exit(64);
+    }
+
+    private static Output openOutput(Path file, Output.Flush flush, int limit) {
+        try {
+            return Output.file(file, flush, limit);
+        } catch (IOException error) {
+            System.err.println("Could not open '" + file + "' for output.");
+            System.exit(74);
+            return null;
+        }
+    }
+
+    private static int kilobytes(String text) {
+        try {
+            int kilobytes = Integer.parseInt(text);
+            if (kilobytes > 0 && kilobytes <= 1 << 20) return kilobytes << 10;
+        } catch (NumberFormatException error) {
+            // Reported below.
+        }
+
+        usage();
+        return 0;
+    }
+
+    private static long megabytes(String text) {
+        try {
+            long megabytes = Long.parseLong(text);
+            if (megabytes > 0) return megabytes << 20;
+        } catch (NumberFormatException error) {
+            // Reported below.
+        }
+
+        usage();
+        return 0;
     }
 
     private static void runFile(String path) throws IOException {
         byte[] bytes = Files.readAllBytes(Paths.get(path));
         run(new String(bytes, Charset.defaultCharset()));
-
-        if(hadError)    System.exit(65);
-        if(hadRuntimeError)     System.exit(70);
     }
 
     private static void runPrompt() throws IOException {
@@ -37,7 +136,8 @@ public class Main {
         BufferedReader reader = new BufferedReader(input);
 
         for(;;){
-            System.out.print("> ");
+            output.print("> ");
+            output.flush();
             String line = reader.readLine();
             if(line == null)    break;
             run(line);
@@ -54,11 +154,56 @@ public class Main {
 
         if(hadError)    return;
 
-        Resolver resolver = new Resolver(interpreter);
+        Resolver resolver = new Resolver();
         resolver.resolve(statements);
         if (hadError) return;
 
-        interpreter.interpret(statements);
+        if (optimize) statements = new Optimizer(interpreter).optimize(statements);
+
+        if (vm != null) {
+            ObjFunction script = new BytecodeCompiler().compile(statements);
+            if (hadError) return;
+
+            try {
+                vm.interpret(script);
+            } catch (VmError error) {
+                runtimeError(error.getMessage(), error.line);
+            }
+            return;
+        }
+
+        interpret(statements);
+    }
+
+    // Runs the tree-walk interpreter on a thread whose Java stack is twice
+    // the --stiva budget, so that recursion is limited by
+    // Interpreter.maxCallDepth and not by the JVM's default stack size. The
+    // slack covers calls that take more than CALL_BYTES.
+    private static void interpret(List<Stmt> statements) {
+        Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                interpreter.interpret(statements);
+            } catch (Throwable error) {
+                failure[0] = error;
+            }
+        }, "rpdc", stackBudget * 2);
+        thread.start();
+
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException error) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+
+        if (failure[0] instanceof RuntimeException) {
+            throw (RuntimeException)failure[0];
+        }
+        if (failure[0] instanceof Error) throw (Error)failure[0];
     }
 
     static void error(int line, String message){
@@ -66,6 +211,7 @@ public class Main {
     }
 
     private static void report(int line, String where, String message){
+        output.flush();
         System.err.println("[line " + line + "] Error " + where + ": " + message);
         hadError = true;
     }
@@ -79,7 +225,12 @@ public class Main {
     }
 
     static void runtimeError(RuntimeError error){
-        System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
+        runtimeError(error.getMessage(), error.token.line);
+    }
+
+    private static void runtimeError(String message, int line){
+        output.flush();
+        System.err.println(message + "\n[line " + line + "]");
         hadRuntimeError = true;
     }
 }
@@ -0,0 +1,484 @@
+package com.interpreter.rpdc;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+// The 'matematica' module: functions of single numbers, and operations
+// over whole arrays of numbers. Arrays of integers and arrays of decimal
+// numbers are worked on straight from their long[] or double[] storage, in
+// plain scalar loops with no boxing, dispatch or per-element type checks;
+// any other array goes element by element through Numbers. The loops are
+// not written to be vectorized: decimal sums must add in order, and the
+// integer loops carry an overflow flag. Integer loops record overflow as
+// they go rather than branching on it and redo the work on the general
+// path if it happened, so every result is the one the same loop written in
+// the language would give.
+final class Matematica {
+    private static final int ADD = 0;
+    private static final int SUBTRACT = 1;
+    private static final int MULTIPLY = 2;
+
+    private Matematica() {}
+
+    static RpdcInstance module() {
+        RpdcInstance module = Biblioteca.module("matematica");
+        Biblioteca.define(module, "absolut", 1, Matematica::abs);
+        Biblioteca.define(module, "radical", 1, (interpreter, arguments) ->
+                Math.sqrt(Numbers.toDouble(number(arguments.get(0)))));
+        Biblioteca.define(module, "parteIntreaga", 1, Matematica::floor);
+        Biblioteca.define(module, "putere", 2, Matematica::power);
+        Biblioteca.define(module, "produsScalar", 2, Matematica::dot);
+        Biblioteca.define(module, "aduna", 2, (interpreter, arguments) ->
+                elementWise(ADD, arguments));
+        Biblioteca.define(module, "scade", 2, (interpreter, arguments) ->
+                elementWise(SUBTRACT, arguments));
+        Biblioteca.define(module, "inmulteste", 2, (interpreter, arguments) ->
+                elementWise(MULTIPLY, arguments));
+        Biblioteca.define(module, "produsMatrice", 2, Matematica::matrixProduct);
+        Biblioteca.define(module, "suma", 1, Matematica::sum);
+        Biblioteca.define(module, "minim", 1, (interpreter, arguments) ->
+                extreme(vector(arguments.get(0)), false));
+        Biblioteca.define(module, "maxim", 1, (interpreter, arguments) ->
+                extreme(vector(arguments.get(0)), true));
+        Biblioteca.define(module, "sumePartiale", 1, Matematica::prefixSums);
+        return module;
+    }
+
+    private static Object abs(Interpreter interpreter,
+                              List<Object> arguments) {
+        Object x = number(arguments.get(0));
+        if (x instanceof Double) return Math.abs((double)x);
+        return Numbers.less(x, 0L) ? Numbers.negate(x) : x;
+    }
+
+    // parteIntreaga(x): the largest integer not above x, as an integer.
+    private static Object floor(Interpreter interpreter,
+                                List<Object> arguments) {
+        Object x = number(arguments.get(0));
+        if (!(x instanceof Double)) return x;
+
+        double floor = Math.floor((double)x);
+        if (Double.isNaN(floor) || Double.isInfinite(floor)) return floor;
+        if (Math.abs(floor) < 0x1p63) return (long)floor;
+        return Numbers.normalize(new BigDecimal(floor).toBigInteger());
+    }
+
+    // putere(x, n): exact when x is an integer and n a non-negative integer
+    // that keeps the result within reason.
+    private static Object power(Interpreter interpreter,
+                                List<Object> arguments) {
+        Object x = number(arguments.get(0));
+        Object n = number(arguments.get(1));
+        if (Numbers.isInteger(x) && n instanceof Long &&
+                (long)n >= 0 && (long)n <= 100_000) {
+            BigInteger base = x instanceof Long
+                    ? BigInteger.valueOf((long)x) : (BigInteger)x;
+            return Numbers.normalize(base.pow((int)(long)n));
+        }
+        return Math.pow(Numbers.toDouble(x), Numbers.toDouble(n));
+    }
+
+    // produsScalar(a, b): the sum of a[i] * b[i].
+    private static Object dot(Interpreter interpreter,
+                              List<Object> arguments) {
+        RpdcArray a = vector(arguments.get(0));
+        RpdcArray b = vector(arguments.get(1));
+        checkLengths(a, b);
+        int n = a.size();
+
+        long[] x = a.longs();
+        long[] y = b.longs();
+        if (x != null && y != null) {
+            long sum = 0;
+            long overflow = 0;
+            for (int i = 0; i < n; i++) {
+                long product = x[i] * y[i];
+                long result = sum + product;
+                overflow |= Math.multiplyHigh(x[i], y[i]) ^ (product >> 63);
+                overflow |= ((sum ^ result) & (product ^ result)) >>> 63;
+                sum = result;
+            }
+            if (overflow == 0) return sum;
+        }
+
+        double[] u = decimals(a, b);
+        double[] v = decimals(b, a);
+        if (u != null && v != null) {
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += u[i] * v[i];
+            }
+            return sum;
+        }
+
+        Object sum = 0L;
+        for (int i = 0; i < n; i++) {
+            sum = Numbers.add(sum,
+                    Numbers.multiply(element(a.get(i)), element(b.get(i))));
+        }
+        return sum;
+    }
+
+    // aduna, scade, inmulteste: a new array combining a and b element by
+    // element. b may also be a single number, used with every element.
+    private static Object elementWise(int op, List<Object> arguments) {
+        RpdcArray a = vector(arguments.get(0));
+        RpdcArray b = arguments.get(1) instanceof RpdcArray
+                ? (RpdcArray)arguments.get(1)
+                : fill(number(arguments.get(1)), a.size());
+        checkLengths(a, b);
+        int n = a.size();
+
+        long[] x = a.longs();
+        long[] y = b.longs();
+        if (x != null && y != null) {
+            long[] result = longs(op, x, y, n);
+            if (result != null) return new RpdcArray(result);
+        }
+
+        double[] u = decimals(a, b);
+        double[] v = decimals(b, a);
+        if (u != null && v != null) return new RpdcArray(doubles(op, u, v, n));
+
+        RpdcArray result = new RpdcArray();
+        for (int i = 0; i < n; i++) {
+            Object left = element(a.get(i));
+            Object right = element(b.get(i));
+            switch (op) {
+                case ADD: result.add(Numbers.add(left, right)); break;
+                case SUBTRACT: result.add(Numbers.subtract(left, right)); break;
+                default: result.add(Numbers.multiply(left, right)); break;
+            }
+        }
+        return result;
+    }
+
+    // Null if any element overflowed.
+    private static long[] longs(int op, long[] x, long[] y, int n) {
+        long[] result = new long[n];
+        long overflow = 0;
+        switch (op) {
+            case ADD:
+                for (int i = 0; i < n; i++) {
+                    long r = x[i] + y[i];
+                    overflow |= ((x[i] ^ r) & (y[i] ^ r)) >>> 63;
+                    result[i] = r;
+                }
+                break;
+            case SUBTRACT:
+                for (int i = 0; i < n; i++) {
+                    long r = x[i] - y[i];
+                    overflow |= ((x[i] ^ y[i]) & (x[i] ^ r)) >>> 63;
+                    result[i] = r;
+                }
+                break;
+            default:
+                for (int i = 0; i < n; i++) {
+                    long r = x[i] * y[i];
+                    overflow |= Math.multiplyHigh(x[i], y[i]) ^ (r >> 63);
+                    result[i] = r;
+                }
+                break;
+        }
+        return overflow == 0 ? result : null;
+    }
+
+    private static double[] doubles(int op, double[] x, double[] y, int n) {
+        double[] result = new double[n];
+        switch (op) {
+            case ADD:
+                for (int i = 0; i < n; i++) result[i] = x[i] + y[i];
+                break;
+            case SUBTRACT:
+                for (int i = 0; i < n; i++) result[i] = x[i] - y[i];
+                break;
+            default:
+                for (int i = 0; i < n; i++) result[i] = x[i] * y[i];
+                break;
+        }
+        return result;
+    }
+
+    // produsMatrice(a, b): a and b are arrays of rows. Each entry of the
+    // result is summed in the order of the usual triple loop, so decimal
+    // results round the same way too. Going through doubles is only exact
+    // when one side is all decimal, so that every product is a Double.
+    private static Object matrixProduct(Interpreter interpreter,
+                                        List<Object> arguments) {
+        RpdcArray[] a = matrix(arguments.get(0));
+        RpdcArray[] b = matrix(arguments.get(1));
+        int inner = b.length;
+        int columns = b.length == 0 ? 0 : b[0].size();
+        for (RpdcArray row : a) {
+            if (row.size() != inner) {
+                throw new RuntimeError(null, "Matrix dimensions don't match.");
+            }
+        }
+
+        RpdcArray result = new RpdcArray();
+        if (allIntegers(a) && allIntegers(b)) {
+            long[][] rows = new long[a.length][];
+            long overflow = 0;
+            for (int i = 0; i < a.length && overflow == 0; i++) {
+                long[] row = new long[columns];
+                long[] left = a[i].longs();
+                for (int k = 0; k < inner; k++) {
+                    long factor = left[k];
+                    long[] right = b[k].longs();
+                    for (int j = 0; j < columns; j++) {
+                        long product = factor * right[j];
+                        long sum = row[j] + product;
+                        overflow |= Math.multiplyHigh(factor, right[j]) ^
+                                (product >> 63);
+                        overflow |= ((row[j] ^ sum) & (product ^ sum)) >>> 63;
+                        row[j] = sum;
+                    }
+                }
+                rows[i] = row;
+            }
+            if (overflow == 0) {
+                for (long[] row : rows) result.add(new RpdcArray(row));
+                return result;
+            }
+        }
+
+        if ((allDecimal(a) && allPrimitive(b)) ||
+                (allPrimitive(a) && allDecimal(b))) {
+            double[][] right = new double[inner][];
+            for (int k = 0; k < inner; k++) right[k] = decimals(b[k]);
+            for (RpdcArray leftRow : a) {
+                double[] left = decimals(leftRow);
+                double[] row = new double[columns];
+                for (int k = 0; k < inner; k++) {
+                    double factor = left[k];
+                    double[] other = right[k];
+                    for (int j = 0; j < columns; j++) {
+                        row[j] += factor * other[j];
+                    }
+                }
+                result.add(new RpdcArray(row));
+            }
+            return result;
+        }
+
+        for (RpdcArray leftRow : a) {
+            RpdcArray row = new RpdcArray();
+            for (int j = 0; j < columns; j++) {
+                Object sum = 0L;
+                for (int k = 0; k < inner; k++) {
+                    sum = Numbers.add(sum, Numbers.multiply(
+                            element(leftRow.get(k)), element(b[k].get(j))));
+                }
+                row.add(sum);
+            }
+            result.add(row);
+        }
+        return result;
+    }
+
+    private static Object sum(Interpreter interpreter,
+                              List<Object> arguments) {
+        RpdcArray a = vector(arguments.get(0));
+        int n = a.size();
+
+        long[] x = a.longs();
+        if (x != null) {
+            long sum = 0;
+            long overflow = 0;
+            for (int i = 0; i < n; i++) {
+                long result = sum + x[i];
+                overflow |= ((sum ^ result) & (x[i] ^ result)) >>> 63;
+                sum = result;
+            }
+            if (overflow == 0) return sum;
+        }
+
+        double[] u = a.doubles();
+        if (u != null) {
+            double sum = 0;
+            for (int i = 0; i < n; i++) sum += u[i];
+            return sum;
+        }
+
+        Object sum = 0L;
+        for (int i = 0; i < n; i++) sum = Numbers.add(sum, element(a.get(i)));
+        return sum;
+    }
+
+    // minim(a), maxim(a): the first of the smallest, or largest, elements.
+    private static Object extreme(RpdcArray a, boolean largest) {
+        int n = a.size();
+        if (n == 0) {
+            throw new RuntimeError(null, "Can't take the " +
+                    (largest ? "maximum" : "minimum") + " of an empty array.");
+        }
+
+        long[] x = a.longs();
+        if (x != null) {
+            long best = x[0];
+            for (int i = 1; i < n; i++) {
+                best = largest ? Math.max(best, x[i]) : Math.min(best, x[i]);
+            }
+            return best;
+        }
+
+        double[] u = a.doubles();
+        if (u != null) {
+            double best = u[0];
+            for (int i = 1; i < n; i++) {
+                if (largest ? best < u[i] : u[i] < best) best = u[i];
+            }
+            return best;
+        }
+
+        Object best = element(a.get(0));
+        for (int i = 1; i < n; i++) {
+            Object element = element(a.get(i));
+            if (largest ? Numbers.less(best, element)
+                        : Numbers.less(element, best)) {
+                best = element;
+            }
+        }
+        return best;
+    }
+
+    // sumePartiale(a): element i of the result is a[0] + ... + a[i].
+    private static Object prefixSums(Interpreter interpreter,
+                                     List<Object> arguments) {
+        RpdcArray a = vector(arguments.get(0));
+        int n = a.size();
+
+        long[] x = a.longs();
+        if (x != null) {
+            long[] result = new long[n];
+            long sum = 0;
+            long overflow = 0;
+            for (int i = 0; i < n; i++) {
+                long next = sum + x[i];
+                overflow |= ((sum ^ next) & (x[i] ^ next)) >>> 63;
+                result[i] = sum = next;
+            }
+            if (overflow == 0) return new RpdcArray(result);
+        }
+
+        double[] u = a.doubles();
+        if (u != null) {
+            double[] result = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) result[i] = sum += u[i];
+            return new RpdcArray(result);
+        }
+
+        RpdcArray result = new RpdcArray();
+        Object sum = 0L;
+        for (int i = 0; i < n; i++) {
+            sum = Numbers.add(sum, element(a.get(i)));
+            result.add(sum);
+        }
+        return result;
+    }
+
+    private static RpdcArray vector(Object value) {
+        if (value instanceof RpdcArray) return (RpdcArray)value;
+        throw new RuntimeError(null, "Expected an array of numbers.");
+    }
+
+    private static Object number(Object value) {
+        if (Numbers.isNumber(value)) return value;
+        throw new RuntimeError(null, "Expected a number.");
+    }
+
+    private static Object element(Object value) {
+        if (Numbers.isNumber(value)) return value;
+        throw new RuntimeError(null, "Expected an array of numbers.");
+    }
+
+    private static void checkLengths(RpdcArray a, RpdcArray b) {
+        if (a.size() != b.size()) {
+            throw new RuntimeError(null, "Arrays must have the same length.");
+        }
+    }
+
+    // An array of n copies of 'number'.
+    private static RpdcArray fill(Object number, int n) {
+        if (number instanceof Long) {
+            long[] longs = new long[n];
+            Arrays.fill(longs, (long)number);
+            return new RpdcArray(longs);
+        }
+        if (number instanceof Double) {
+            double[] doubles = new double[n];
+            Arrays.fill(doubles, (double)number);
+            return new RpdcArray(doubles);
+        }
+
+        RpdcArray array = new RpdcArray();
+        for (int i = 0; i < n; i++) array.add(number);
+        return array;
+    }
+
+    // The elements of 'a' as doubles, when mixing it with 'other' in
+    // decimal arithmetic gives the same result as Numbers: both arrays
+    // must be primitive and at least one of them decimal.
+    private static double[] decimals(RpdcArray a, RpdcArray other) {
+        if (a.longs() == null && a.doubles() == null) return null;
+        if (other.longs() == null && other.doubles() == null) return null;
+        if (a.doubles() == null && other.doubles() == null) return null;
+        return decimals(a);
+    }
+
+    private static double[] decimals(RpdcArray a) {
+        if (a.doubles() != null) return a.doubles();
+
+        long[] longs = a.longs();
+        double[] doubles = new double[a.size()];
+        for (int i = 0; i < doubles.length; i++) doubles[i] = longs[i];
+        return doubles;
+    }
+
+    private static RpdcArray[] matrix(Object value) {
+        RpdcArray rows = value instanceof RpdcArray ? (RpdcArray)value : null;
+        RpdcArray[] matrix = new RpdcArray[rows == null ? 0 : rows.size()];
+        for (int i = 0; i < matrix.length; i++) {
+            Object row = rows.get(i);
+            if (!(row instanceof RpdcArray)) {
+                rows = null;
+                break;
+            }
+            matrix[i] = (RpdcArray)row;
+            if (matrix[i].size() != matrix[0].size()) {
+                rows = null;
+                break;
+            }
+        }
+
+        if (rows == null) {
+            throw new RuntimeError(null,
+                    "Expected a matrix: an array of rows of equal length.");
+        }
+        return matrix;
+    }
+
+    private static boolean allIntegers(RpdcArray[] rows) {
+        for (RpdcArray row : rows) {
+            if (row.longs() == null) return false;
+        }
+        return true;
+    }
+
+    private static boolean allDecimal(RpdcArray[] rows) {
+        for (RpdcArray row : rows) {
+            if (row.doubles() == null) return false;
+        }
+        return true;
+    }
+
+    private static boolean allPrimitive(RpdcArray[] rows) {
+        for (RpdcArray row : rows) {
+            if (row.longs() == null && row.doubles() == null) return false;
+        }
+        return true;
+    }
+}
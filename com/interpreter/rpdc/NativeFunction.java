@@ -0,0 +1,34 @@
+package com.interpreter.rpdc;
+
+import java.util.List;
+
+// A function implemented in Java. Bodies report errors by throwing a
+// RuntimeError with no token; Interpreter.call puts it at the call.
+class NativeFunction implements RpdcCallable {
+    interface Body {
+        Object call(Interpreter interpreter, List<Object> arguments);
+    }
+
+    private final int arity;
+    private final Body body;
+
+    NativeFunction(int arity, Body body) {
+        this.arity = arity;
+        this.body = body;
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return body.call(interpreter, arguments);
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn>";
+    }
+}
@@ -0,0 +1,144 @@
+package com.interpreter.rpdc;
+
+import java.math.BigInteger;
+
+// Arithmetic over the three kinds of number: Long for integers, BigInteger
+// for integers too large for a long, and Double for everything else.
+// Integer operations stay exact, and a BigInteger result that fits in a
+// long again becomes a Long. Mixing in a Double, or dividing integers that
+// don't divide evenly, gives a Double. The VM uses these too, for whatever
+// its unboxed fast paths don't cover.
+public final class Numbers {
+    private Numbers() {}
+
+    public static boolean isNumber(Object value) {
+        return value instanceof Double || value instanceof Long ||
+                value instanceof BigInteger;
+    }
+
+    static boolean isInteger(Object value) {
+        return value instanceof Long || value instanceof BigInteger;
+    }
+
+    static double toDouble(Object number) {
+        return ((Number)number).doubleValue();
+    }
+
+    private static BigInteger toBig(Object integer) {
+        if (integer instanceof BigInteger) return (BigInteger)integer;
+        return BigInteger.valueOf((long)integer);
+    }
+
+    static Object normalize(BigInteger value) {
+        if (value.bitLength() < 64) return value.longValue();
+        return value;
+    }
+
+    public static Object add(Object a, Object b) {
+        if (a instanceof Double && b instanceof Double) {
+            return (double)a + (double)b;
+        }
+        if (a instanceof Long && b instanceof Long) {
+            long x = (long)a;
+            long y = (long)b;
+            long result = x + y;
+            if (((x ^ result) & (y ^ result)) >= 0) return result;
+        }
+        if (isInteger(a) && isInteger(b)) {
+            return normalize(toBig(a).add(toBig(b)));
+        }
+        return toDouble(a) + toDouble(b);
+    }
+
+    public static Object subtract(Object a, Object b) {
+        if (a instanceof Double && b instanceof Double) {
+            return (double)a - (double)b;
+        }
+        if (a instanceof Long && b instanceof Long) {
+            long x = (long)a;
+            long y = (long)b;
+            long result = x - y;
+            if (((x ^ y) & (x ^ result)) >= 0) return result;
+        }
+        if (isInteger(a) && isInteger(b)) {
+            return normalize(toBig(a).subtract(toBig(b)));
+        }
+        return toDouble(a) - toDouble(b);
+    }
+
+    public static Object multiply(Object a, Object b) {
+        if (a instanceof Double && b instanceof Double) {
+            return (double)a * (double)b;
+        }
+        if (a instanceof Long && b instanceof Long) {
+            long x = (long)a;
+            long y = (long)b;
+            long high = Math.multiplyHigh(x, y);
+            long result = x * y;
+            if ((high == 0 && result >= 0) || (high == -1 && result < 0)) {
+                return result;
+            }
+        }
+        if (isInteger(a) && isInteger(b)) {
+            return normalize(toBig(a).multiply(toBig(b)));
+        }
+        return toDouble(a) * toDouble(b);
+    }
+
+    public static Object divide(Object a, Object b) {
+        if (a instanceof Double && b instanceof Double) {
+            return (double)a / (double)b;
+        }
+        if (a instanceof Long && b instanceof Long) {
+            long x = (long)a;
+            long y = (long)b;
+            if (y != 0 && x % y == 0 && !(x == Long.MIN_VALUE && y == -1)) {
+                return x / y;
+            }
+        }
+        if (isInteger(a) && isInteger(b) && toBig(b).signum() != 0) {
+            BigInteger[] division = toBig(a).divideAndRemainder(toBig(b));
+            if (division[1].signum() == 0) return normalize(division[0]);
+        }
+        return toDouble(a) / toDouble(b);
+    }
+
+    // Truncating, like Java's %: the result takes the sign of 'a'.
+    public static Object modulo(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long && (long)b != 0) {
+            return (long)a % (long)b;
+        }
+        if (isInteger(a) && isInteger(b) && toBig(b).signum() != 0) {
+            return normalize(toBig(a).remainder(toBig(b)));
+        }
+        return toDouble(a) % toDouble(b);
+    }
+
+    public static Object negate(Object a) {
+        if (a instanceof Double) return -(double)a;
+        if (a instanceof Long && (long)a != Long.MIN_VALUE) return -(long)a;
+        return normalize(toBig(a).negate());
+    }
+
+    public static boolean less(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) return (long)a < (long)b;
+        if (isInteger(a) && isInteger(b)) {
+            return toBig(a).compareTo(toBig(b)) < 0;
+        }
+        return toDouble(a) < toDouble(b);
+    }
+
+    public static boolean lessEqual(Object a, Object b) {
+        if (a instanceof Long && b instanceof Long) return (long)a <= (long)b;
+        if (isInteger(a) && isInteger(b)) {
+            return toBig(a).compareTo(toBig(b)) <= 0;
+        }
+        return toDouble(a) <= toDouble(b);
+    }
+
+    // Integers are kept normalized, so a Long never equals a BigInteger.
+    public static boolean equal(Object a, Object b) {
+        if (isInteger(a) && isInteger(b)) return a.equals(b);
+        return toDouble(a) == toDouble(b);
+    }
+}
@@ -0,0 +1,351 @@
+package com.interpreter.rpdc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Runs after the Resolver: folds operators whose operands are all literals,
+// simplifies 'si'/'sau' with a literal left operand and drops 'daca'
+// branches that can never run. Nodes are rebuilt only when something
+// inside them changed, carrying over what the Resolver filled in.
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    private final Interpreter interpreter;
+
+    Optimizer(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    List<Stmt> optimize(List<Stmt> statements) {
+        List<Stmt> optimized = new ArrayList<>();
+        boolean changed = false;
+        for (Stmt statement : statements) {
+            Stmt result = statement.accept(this);
+            if (result != null) optimized.add(result);
+            if (result != statement) changed = true;
+        }
+
+        return changed ? optimized : statements;
+    }
+
+    private Stmt optimize(Stmt stmt) {
+        if (stmt == null) return null;
+        return stmt.accept(this);
+    }
+
+    // For places that need a statement, like the body of a 'cattimp'.
+    private Stmt optimizeRequired(Stmt stmt) {
+        Stmt result = stmt.accept(this);
+        if (result != null) return result;
+
+        Stmt.Block empty = new Stmt.Block(new ArrayList<>());
+        empty.slots = 0;
+        return empty;
+    }
+
+    private Expr optimize(Expr expr) {
+        if (expr == null) return null;
+        return expr.accept(this);
+    }
+
+    // Evaluates an operator whose operands are literals. Anything that would
+    // fail is left for runtime so the error is still reported there.
+    private Expr fold(Expr expr) {
+        try {
+            Object value = expr.accept(interpreter);
+            return new Expr.Literal(RpdcString.flatten(value));
+        } catch (RuntimeError error) {
+            return expr;
+        }
+    }
+
+    @Override
+    public Expr visitArrayExpr(Expr.Array expr) {
+        List<Expr> elements = new ArrayList<>();
+        boolean changed = false;
+        for (Expr element : expr.elements) {
+            Expr result = optimize(element);
+            elements.add(result);
+            if (result != element) changed = true;
+        }
+
+        if (!changed) return expr;
+        return new Expr.Array(expr.bracket, elements);
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        Expr value = optimize(expr.value);
+        if (value == expr.value) return expr;
+
+        Expr.Assign result = new Expr.Assign(expr.name, value);
+        result.depth = expr.depth;
+        result.slot = expr.slot;
+        result.upvalue = expr.upvalue;
+        return result;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        Expr.Binary result = expr;
+        if (left != expr.left || right != expr.right) {
+            result = new Expr.Binary(left, expr.operator, right);
+        }
+
+        if (left instanceof Expr.Literal && right instanceof Expr.Literal) {
+            return fold(result);
+        }
+        return result;
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        Expr callee = optimize(expr.callee);
+        List<Expr> arguments = new ArrayList<>();
+        boolean changed = callee != expr.callee;
+        for (Expr argument : expr.arguments) {
+            Expr result = optimize(argument);
+            arguments.add(result);
+            if (result != argument) changed = true;
+        }
+
+        if (!changed) return expr;
+        return new Expr.Call(callee, expr.paren, arguments);
+    }
+
+    @Override
+    public Expr visitGetExpr(Expr.Get expr) {
+        Expr object = optimize(expr.object);
+        if (object == expr.object) return expr;
+        return new Expr.Get(object, expr.name);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        Expr expression = optimize(expr.expression);
+        if (expression instanceof Expr.Literal) return expression;
+        if (expression == expr.expression) return expr;
+        return new Expr.Grouping(expression);
+    }
+
+    @Override
+    public Expr visitIndexExpr(Expr.Index expr) {
+        Expr object = optimize(expr.object);
+        Expr index = optimize(expr.index);
+        if (object == expr.object && index == expr.index) return expr;
+        return new Expr.Index(object, expr.bracket, index);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+
+        if (left instanceof Expr.Literal) {
+            boolean truthy = interpreter.isTruthy(((Expr.Literal)left).value);
+            if (expr.operator.type == TokenType.SAU) {
+                return truthy ? left : right;
+            }
+            return truthy ? right : left;
+        }
+
+        if (left == expr.left && right == expr.right) return expr;
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitSetExpr(Expr.Set expr) {
+        Expr object = optimize(expr.object);
+        Expr value = optimize(expr.value);
+        if (object == expr.object && value == expr.value) return expr;
+        return new Expr.Set(object, expr.name, value);
+    }
+
+    @Override
+    public Expr visitSetIndexExpr(Expr.SetIndex expr) {
+        Expr object = optimize(expr.object);
+        Expr index = optimize(expr.index);
+        Expr value = optimize(expr.value);
+        if (object == expr.object && index == expr.index &&
+                value == expr.value) {
+            return expr;
+        }
+        return new Expr.SetIndex(object, expr.bracket, index, value);
+    }
+
+    @Override
+    public Expr visitSuperExpr(Expr.Super expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitThisExpr(Expr.This expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = optimize(expr.right);
+        Expr.Unary result = expr;
+        if (right != expr.right) result = new Expr.Unary(expr.operator, right);
+
+        if (right instanceof Expr.Literal) return fold(result);
+        return result;
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        List<Stmt> statements = optimize(stmt.statements);
+        if (statements == stmt.statements) return stmt;
+
+        Stmt.Block result = new Stmt.Block(statements);
+        result.slots = stmt.slots;
+        return result;
+    }
+
+    @Override
+    public Stmt visitBreakStmt(Stmt.Break stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitClassStmt(Stmt.Class stmt) {
+        List<Stmt.Function> methods = new ArrayList<>();
+        boolean changed = false;
+        for (Stmt.Function method : stmt.methods) {
+            Stmt.Function result = (Stmt.Function)method.accept(this);
+            methods.add(result);
+            if (result != method) changed = true;
+        }
+
+        if (!changed) return stmt;
+
+        Stmt.Class result = new Stmt.Class(stmt.name, stmt.superclass, methods);
+        result.slot = stmt.slot;
+        result.boxed = stmt.boxed;
+        return result;
+    }
+
+    @Override
+    public Stmt visitCountStmt(Stmt.Count stmt) {
+        Expr from = optimize(stmt.from);
+        Expr to = optimize(stmt.to);
+        Expr step = optimize(stmt.step);
+        Stmt body = optimizeRequired(stmt.body);
+        if (from == stmt.from && to == stmt.to && step == stmt.step &&
+                body == stmt.body) {
+            return stmt;
+        }
+
+        Stmt.Count result = new Stmt.Count(stmt.name, from, to, step, body);
+        result.boxed = stmt.boxed;
+        return result;
+    }
+
+    @Override
+    public Stmt visitContinueStmt(Stmt.Continue stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expression = optimize(stmt.expression);
+        if (expression == stmt.expression) return stmt;
+        return new Stmt.Expression(expression);
+    }
+
+    @Override
+    public Stmt visitForStmt(Stmt.For stmt) {
+        Stmt initializer = optimize(stmt.initializer);
+        Expr condition = optimize(stmt.condition);
+        Expr increment = optimize(stmt.increment);
+        Stmt body = optimizeRequired(stmt.body);
+        if (initializer == stmt.initializer && condition == stmt.condition &&
+                increment == stmt.increment && body == stmt.body) {
+            return stmt;
+        }
+
+        Stmt.For result = new Stmt.For(initializer, condition, increment, body);
+        result.slots = stmt.slots;
+        return result;
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        List<Stmt> body = optimize(stmt.body);
+        if (body == stmt.body) return stmt;
+
+        Stmt.Function result = new Stmt.Function(stmt.name, stmt.params, body);
+        result.slot = stmt.slot;
+        result.slots = stmt.slots;
+        result.boxed = stmt.boxed;
+        result.boxedParams = stmt.boxedParams;
+        result.captures = stmt.captures;
+        return result;
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (condition instanceof Expr.Literal) {
+            if (interpreter.isTruthy(((Expr.Literal)condition).value)) {
+                return optimize(stmt.thenBranch);
+            }
+            return optimize(stmt.elseBranch);
+        }
+
+        Stmt thenBranch = optimizeRequired(stmt.thenBranch);
+        Stmt elseBranch = optimize(stmt.elseBranch);
+        if (condition == stmt.condition && thenBranch == stmt.thenBranch &&
+                elseBranch == stmt.elseBranch) {
+            return stmt;
+        }
+        return new Stmt.If(condition, thenBranch, elseBranch);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        Expr expression = optimize(stmt.expression);
+        if (expression == stmt.expression) return stmt;
+        return new Stmt.Print(expression);
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        Expr value = optimize(stmt.value);
+        if (value == stmt.value) return stmt;
+
+        Stmt.Return result = new Stmt.Return(stmt.keyword, value);
+        result.tail = stmt.tail && value instanceof Expr.Call;
+        return result;
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        Expr initializer = optimize(stmt.initializer);
+        if (initializer == stmt.initializer) return stmt;
+
+        Stmt.Var result = new Stmt.Var(stmt.name, initializer);
+        result.slot = stmt.slot;
+        result.boxed = stmt.boxed;
+        return result;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = optimize(stmt.condition);
+        Stmt body = optimizeRequired(stmt.body);
+        if (condition == stmt.condition && body == stmt.body) return stmt;
+        return new Stmt.While(condition, body);
+    }
+}
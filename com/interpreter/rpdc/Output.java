@@ -0,0 +1,223 @@
+package com.interpreter.rpdc;
+
+import com.interpreter.rpdc.vm.Printer;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Where 'scrie' writes. Text is encoded as UTF-8 into a buffer that is only
+// written out when the flush policy says so, rather than through
+// System.out's synchronized, flush-every-line PrintStream. Anything going
+// to System.err should flush this first so the two stay in order. A failed
+// write doesn't stop the program; like PrintStream, the first error is kept
+// for Main to report at the end.
+//
+// Numbers are written digit by digit straight into the buffer, exactly as
+// Interpreter.stringify would spell them; see println(double).
+abstract class Output implements Printer {
+    enum Flush {
+        // After every line, for the REPL.
+        LINE,
+        // Whenever 'limit' bytes are waiting.
+        SIZE,
+        // Only at the end, or before an error message.
+        EXIT
+    }
+
+    static final int DEFAULT_LIMIT = 64 * 1024;
+
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000};
+
+    private final Flush policy;
+    private final int limit;
+    private byte[] buffer;
+    private int count = 0;
+    private IOException error = null;
+
+    Output(Flush policy, int limit) {
+        this.policy = policy;
+        this.limit = limit;
+        buffer = new byte[Math.min(limit, DEFAULT_LIMIT) + 1];
+    }
+
+    // The standard output, written to directly rather than through
+    // System.out.
+    static Output standard(Flush policy, int limit) {
+        FileOutputStream out = new FileOutputStream(FileDescriptor.out);
+        return new Output(policy, limit) {
+            @Override
+            void write(byte[] bytes, int length) throws IOException {
+                out.write(bytes, 0, length);
+            }
+        };
+    }
+
+    // Replaces the contents of 'path'.
+    static Output file(Path path, Flush policy, int limit) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        return new Output(policy, limit) {
+            @Override
+            void write(byte[] bytes, int length) throws IOException {
+                ByteBuffer data = ByteBuffer.wrap(bytes, 0, length);
+                while (data.hasRemaining()) channel.write(data);
+            }
+
+            @Override
+            void close() {
+                super.close();
+                try {
+                    channel.close();
+                } catch (IOException error) {
+                    fail(error);
+                }
+            }
+        };
+    }
+
+    abstract void write(byte[] bytes, int length) throws IOException;
+
+    void print(String text) {
+        append(text);
+        if (policy == Flush.SIZE && count >= limit) flush();
+    }
+
+    @Override
+    public void println(String text) {
+        append(text);
+        endLine();
+    }
+
+    @Override
+    public void println(long number) {
+        if (number == Long.MIN_VALUE) {
+            println(Long.toString(number));
+            return;
+        }
+
+        reserve(21);
+        if (number < 0) buffer[count++] = '-';
+        putDigits(Math.abs(number), 0);
+        endLine();
+    }
+
+    // Double.toString, less any ".0", without making either String. Whole
+    // numbers below 10^7 (past that Double.toString switches to E
+    // notation) print as integers. Other numbers in Double.toString's plain
+    // range use the fewest decimals, up to four, that read back as the
+    // same double; those are the digits Double.toString picks too. The
+    // rest go through Double.toString itself.
+    @Override
+    public void println(double number) {
+        double magnitude = Math.abs(number);
+        if (magnitude < 1e7 && magnitude == (long)magnitude) {
+            reserve(9);
+            if (Double.doubleToRawLongBits(number) < 0) buffer[count++] = '-';
+            putDigits((long)magnitude, 0);
+            endLine();
+            return;
+        }
+
+        if (magnitude >= 1e-3 && magnitude < 1e7) {
+            for (int decimals = 1; decimals <= 4; decimals++) {
+                long scale = POWERS_OF_TEN[decimals];
+                long digits = Math.round(magnitude * scale);
+                if ((double)digits / scale != magnitude) continue;
+
+                reserve(14);
+                if (number < 0) buffer[count++] = '-';
+                putDigits(digits / scale, 0);
+                buffer[count++] = '.';
+                putDigits(digits % scale, decimals);
+                endLine();
+                return;
+            }
+        }
+
+        println(Double.toString(number));
+    }
+
+    private void endLine() {
+        put((byte)'\n');
+        if (policy == Flush.LINE ||
+                (policy == Flush.SIZE && count >= limit)) {
+            flush();
+        }
+    }
+
+    void flush() {
+        if (count == 0) return;
+
+        try {
+            write(buffer, count);
+        } catch (IOException error) {
+            fail(error);
+        }
+        count = 0;
+    }
+
+    void close() {
+        flush();
+    }
+
+    // The first write that failed, or null.
+    IOException error() {
+        return error;
+    }
+
+    void fail(IOException error) {
+        if (this.error == null) this.error = error;
+    }
+
+    // ASCII, the usual case, is copied a char at a time; anything else is
+    // left to the encoder.
+    private void append(String text) {
+        int length = text.length();
+        reserve(length);
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x80) {
+                byte[] bytes = text.substring(i)
+                        .getBytes(StandardCharsets.UTF_8);
+                reserve(bytes.length);
+                System.arraycopy(bytes, 0, buffer, count, bytes.length);
+                count += bytes.length;
+                return;
+            }
+            buffer[count++] = (byte)c;
+        }
+    }
+
+    // 'value' in decimal, zero-padded to 'width' digits. The caller has
+    // reserved the room.
+    private void putDigits(long value, int width) {
+        int length = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) length++;
+        length = Math.max(length, width);
+
+        for (int i = count + length - 1; i >= count; i--) {
+            buffer[i] = (byte)('0' + value % 10);
+            value /= 10;
+        }
+        count += length;
+    }
+
+    private void put(byte b) {
+        reserve(1);
+        buffer[count++] = b;
+    }
+
+    private void reserve(int length) {
+        if (buffer.length - count >= length) return;
+        buffer = Arrays.copyOf(buffer,
+                Math.max(buffer.length * 2, count + length));
+    }
+}
@@ -1,7 +1,6 @@
 package com.interpreter.rpdc;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import static com.interpreter.rpdc.TokenType.*;
 
@@ -25,11 +24,15 @@ public class Parser {
         if(match(SCRIE))    return printStatement();
         if(match(INTOARCE))    return returnStatement();
         if(match(CAT_TIMP))     return whileStatement();
+        if(match(OPRESTE))      return breakStatement();
+        if(match(CONTINUA))     return continueStatement();
         if(match(ACOLADA_STANGA))     return new Stmt.Block(block());
         return expressionStatement();
     }
 
     private Stmt forStatement(){
+        if (check(IDENTIFICATOR)) return countStatement();
+
         consume(PARANTEZA_STANGA, "Expect '(' after 'for'.");
 
         Stmt initializer;
@@ -54,22 +57,24 @@ public class Parser {
         consume(PARANTEZA_DREAPTA, "Expect ')' after for clauses.");
 
         Stmt body = statement();
+        return new Stmt.For(initializer, condition, increment, body);
+    }
 
-        if (increment != null) {
-            body = new Stmt.Block(
-                    Arrays.asList(
-                            body,
-                            new Stmt.Expression(increment)));
-        }
-
-        if(condition == null)   condition = new Expr.Literal(true);
-        body = new Stmt.While(condition, body);
+    // pentru i <- start, end[, step] body
+    private Stmt countStatement() {
+        Token name = consume(IDENTIFICATOR, "Expect loop variable name.");
+        consume(ATRIBUIRE, "Expect '<-' after loop variable.");
+        Expr from = expression();
+        consume(VIRGULA, "Expect ',' after loop start.");
+        Expr to = expression();
 
-        if(initializer != null) {
-            body = new Stmt.Block(Arrays.asList(initializer, body));
+        Expr step = null;
+        if (match(VIRGULA)) {
+            step = expression();
         }
 
-        return body;
+        Stmt body = statement();
+        return new Stmt.Count(name, from, to, step, body);
     }
 
     private Stmt returnStatement() {
@@ -82,6 +87,18 @@ public class Parser {
         return new Stmt.Return(keyword, value);
     }
 
+    private Stmt breakStatement() {
+        Token keyword = previous();
+        consume(PUNCT_SI_VIRGULA, "Expect ';' after 'opreste'.");
+        return new Stmt.Break(keyword);
+    }
+
+    private Stmt continueStatement() {
+        Token keyword = previous();
+        consume(PUNCT_SI_VIRGULA, "Expect ';' after 'continua'.");
+        return new Stmt.Continue(keyword);
+    }
+
     private Stmt ifStatement() {
         consume(PARANTEZA_STANGA, "Expect '(' after 'if'.");
         Expr condition = expression();
@@ -152,6 +169,10 @@ public class Parser {
             } else if (expr instanceof Expr.Get) {
                 Expr.Get get = (Expr.Get)expr;
                 return new Expr.Set(get.object, get.name, value);
+            } else if (expr instanceof Expr.Index) {
+                Expr.Index index = (Expr.Index)expr;
+                return new Expr.SetIndex(index.object, index.bracket,
+                        index.index, value);
             }
 
             error(equals, "Invalid assignment target.");
@@ -255,7 +276,7 @@ public class Parser {
     private Expr factor(){
         Expr expr = unary();
 
-        while(match(SLASH, STAR)){
+        while(match(SLASH, STAR, PROCENT)){
             Token operator = previous();
             Expr right = unary();
             expr = new Expr.Binary(expr, operator, right);
@@ -300,6 +321,11 @@ public class Parser {
                 Token name = consume(IDENTIFICATOR,
                         "Expect property name after '.'.");
                 expr = new Expr.Get(expr, name);
+            } else if (match(CROSET_STANGA)) {
+                Expr index = expression();
+                Token bracket = consume(CROSET_DREAPTA,
+                        "Expect ']' after index.");
+                expr = new Expr.Index(expr, bracket, index);
             } else {
                 break;
             }
@@ -337,9 +363,24 @@ public class Parser {
             return new Expr.Grouping(expr);
         }
 
+        if (match(CROSET_STANGA)) return array();
+
         throw error(peek(), "Expect expression.");
     }
 
+    // [a, b, c]
+    private Expr array() {
+        List<Expr> elements = new ArrayList<>();
+        if (!check(CROSET_DREAPTA)) {
+            do {
+                elements.add(expression());
+            } while (match(VIRGULA));
+        }
+
+        Token bracket = consume(CROSET_DREAPTA, "Expect ']' after elements.");
+        return new Expr.Array(bracket, elements);
+    }
+
     private Token consume(TokenType type, String message){
         if(check(type))     return advance();
 
@@ -366,6 +407,8 @@ public class Parser {
                 case CAT_TIMP:
                 case SCRIE:
                 case INTOARCE:
+                case OPRESTE:
+                case CONTINUA:
                     return;
             }
 
@@ -1,18 +1,16 @@
 package com.interpreter.rpdc;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
-    private final Interpreter interpreter;
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    private final Stack<Map<String, Local>> scopes = new Stack<>();
     private FunctionType currentFunction = FunctionType.NONE;
-
-    Resolver(Interpreter interpreter){
-        this.interpreter = interpreter;
-    }
+    // Loops around the code being resolved, within the current function.
+    private int loops = 0;
 
     private enum ClassType {
         NONE,
@@ -22,6 +20,37 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
 
     private ClassType currentClass = ClassType.NONE;
 
+    private static class Local {
+        final int slot;
+        // The Var, Function, Class or Count declaring it; null for
+        // parameters and synthetic names.
+        final Stmt declaration;
+        boolean defined = false;
+        boolean captured = false;
+        boolean assigned = false;
+
+        Local(int slot, Stmt declaration) {
+            this.slot = slot;
+            this.declaration = declaration;
+        }
+    }
+
+    // The function being resolved. Scopes from 'base' up are its own; a
+    // variable found below that comes in through one of its captures.
+    private static class FunctionScope {
+        final FunctionScope enclosing;
+        final int base;
+        final List<Capture> captures = new ArrayList<>();
+        final Map<Local, Integer> upvalues = new HashMap<>();
+
+        FunctionScope(FunctionScope enclosing, int base) {
+            this.enclosing = enclosing;
+            this.base = base;
+        }
+    }
+
+    private FunctionScope function = new FunctionScope(null, 0);
+
     void resolve(List<Stmt> statements) {
         for (Stmt statement : statements) {
             resolve(statement);
@@ -29,43 +58,129 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     }
 
     private void beginScope() {
-        scopes.push(new HashMap<String, Boolean>());
-    }
-
-    private void endScope() {
-        scopes.pop();
+        scopes.push(new HashMap<String, Local>());
+    }
+
+    // A captured local is boxed if it can change after a closure copied it:
+    // when it is assigned, or when it is a function, class or loop counter,
+    // which closures can capture before (or while) it gets its value.
+    private int endScope() {
+        Map<String, Local> scope = scopes.pop();
+        for (Local local : scope.values()) {
+            if (!local.captured) continue;
+
+            Stmt declaration = local.declaration;
+            if (declaration instanceof Stmt.Var) {
+                ((Stmt.Var)declaration).boxed = local.assigned;
+            } else if (declaration instanceof Stmt.Function) {
+                ((Stmt.Function)declaration).boxed = true;
+            } else if (declaration instanceof Stmt.Class) {
+                ((Stmt.Class)declaration).boxed = true;
+            } else if (declaration instanceof Stmt.Count) {
+                ((Stmt.Count)declaration).boxed = true;
+            }
+        }
+        return scope.size();
     }
 
-    private void declare(Token name) {
-        if (scopes.isEmpty()) return;
-        Map<String, Boolean> scope = scopes.peek();
+    private int declare(Token name, Stmt declaration) {
+        if (scopes.isEmpty()) return -1;
+        Map<String, Local> scope = scopes.peek();
         if (scope.containsKey(name.lexeme)) {
             Main.error(name,
                     "Already variable with this name in this scope.");
+            return scope.get(name.lexeme).slot;
         }
 
-        scope.put(name.lexeme, false);
+        Local local = new Local(scope.size(), declaration);
+        scope.put(name.lexeme, local);
+        return local.slot;
     }
 
     private void define(Token name) {
         if (scopes.isEmpty()) return;
-        scopes.peek().put(name.lexeme, true);
+        scopes.peek().get(name.lexeme).defined = true;
     }
 
-    private void resolveLocal(Expr expr, Token name) {
+    private void defineSynthetic(String name) {
+        Map<String, Local> scope = scopes.peek();
+        Local local = new Local(scope.size(), null);
+        local.defined = true;
+        scope.put(name, local);
+    }
+
+    // Index in 'scopes' of the innermost scope declaring 'name', or -1.
+    private int scopeOf(Token name) {
         for (int i = scopes.size() - 1; i >= 0; i--) {
-            if (scopes.get(i).containsKey(name.lexeme)) {
-                interpreter.resolve(expr, scopes.size() - 1 - i);
-                return;
-            }
+            if (scopes.get(i).containsKey(name.lexeme)) return i;
+        }
+
+        return -1;
+    }
+
+    private Local local(int scope, Token name) {
+        return scopes.get(scope).get(name.lexeme);
+    }
+
+    private int depth(int scope) {
+        return scopes.size() - 1 - scope;
+    }
+
+    private int upvalue(FunctionScope function, int scope, Token name) {
+        Local local = local(scope, name);
+        Integer index = function.upvalues.get(local);
+        if (index != null) return index;
+
+        if (scope >= function.enclosing.base) {
+            local.captured = true;
+            function.captures.add(new Capture(function.base - 1 - scope,
+                    local.slot));
+        } else {
+            function.captures.add(new Capture(-1,
+                    upvalue(function.enclosing, scope, name)));
         }
+
+        index = function.captures.size() - 1;
+        function.upvalues.put(local, index);
+        return index;
     }
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
-        beginScope();
-        resolve(stmt.statements);
-        endScope();
+        if (declares(stmt.statements)) {
+            beginScope();
+            resolve(stmt.statements);
+            stmt.slots = endScope();
+        } else {
+            resolve(stmt.statements);
+        }
+        return null;
+    }
+
+    private static boolean declares(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Var ||
+                    statement instanceof Stmt.Function ||
+                    statement instanceof Stmt.Class) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        if (loops == 0) {
+            Main.error(stmt.keyword, "Can't use 'opreste' outside of a loop.");
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitContinueStmt(Stmt.Continue stmt) {
+        if (loops == 0) {
+            Main.error(stmt.keyword, "Can't use 'continua' outside of a loop.");
+        }
         return null;
     }
 
@@ -77,7 +192,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
 
     @Override
     public Void visitVarStmt(Stmt.Var stmt) {
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name, stmt);
         if (stmt.initializer != null) {
             resolve(stmt.initializer);
         }
@@ -88,25 +203,42 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     @Override
     public Void visitVariableExpr(Expr.Variable expr) {
         if (!scopes.isEmpty() &&
-                scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
+                scopes.peek().containsKey(expr.name.lexeme) &&
+                !scopes.peek().get(expr.name.lexeme).defined) {
             Main.error(expr.name,
                     "Can't read local variable in its own initializer.");
         }
 
-        resolveLocal(expr, expr.name);
+        int scope = scopeOf(expr.name);
+        if (scope >= function.base) {
+            expr.depth = depth(scope);
+            expr.slot = local(scope, expr.name).slot;
+        } else if (scope >= 0) {
+            expr.upvalue = upvalue(function, scope, expr.name);
+        }
         return null;
     }
 
     @Override
     public Void visitAssignExpr(Expr.Assign expr) {
         resolve(expr.value);
-        resolveLocal(expr, expr.name);
+
+        int scope = scopeOf(expr.name);
+        if (scope < 0) return null;
+
+        local(scope, expr.name).assigned = true;
+        if (scope >= function.base) {
+            expr.depth = depth(scope);
+            expr.slot = local(scope, expr.name).slot;
+        } else {
+            expr.upvalue = upvalue(function, scope, expr.name);
+        }
         return null;
     }
 
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name, stmt);
         define(stmt.name);
 
         resolveFunction(stmt, FunctionType.FUNCTION);
@@ -140,6 +272,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
             }
 
             resolve(stmt.value);
+            stmt.tail = stmt.value instanceof Expr.Call &&
+                    currentFunction != FunctionType.NONE;
         }
 
         return null;
@@ -148,7 +282,42 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     @Override
     public Void visitWhileStmt(Stmt.While stmt) {
         resolve(stmt.condition);
+        loops++;
+        resolve(stmt.body);
+        loops--;
+
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        // Like a block, the loop only gets a scope if it declares something.
+        boolean scoped = stmt.initializer instanceof Stmt.Var;
+        if (scoped) beginScope();
+        if (stmt.initializer != null) resolve(stmt.initializer);
+        if (stmt.condition != null) resolve(stmt.condition);
+        if (stmt.increment != null) resolve(stmt.increment);
+        loops++;
+        resolve(stmt.body);
+        loops--;
+        if (scoped) stmt.slots = endScope();
+
+        return null;
+    }
+
+    @Override
+    public Void visitCountStmt(Stmt.Count stmt) {
+        resolve(stmt.from);
+        resolve(stmt.to);
+        if (stmt.step != null) resolve(stmt.step);
+
+        beginScope();
+        declare(stmt.name, stmt);
+        define(stmt.name);
+        loops++;
         resolve(stmt.body);
+        loops--;
+        endScope();
 
         return null;
     }
@@ -160,6 +329,14 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
         return null;
     }
 
+    @Override
+    public Void visitArrayExpr(Expr.Array expr) {
+        for (Expr element : expr.elements) {
+            resolve(element);
+        }
+        return null;
+    }
+
     @Override
     public Void visitCallExpr(Expr.Call expr) {
         resolve(expr.callee);
@@ -200,7 +377,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
         ClassType enclosingClass = currentClass;
         currentClass = ClassType.CLASS;
 
-        declare(stmt.name);
+        stmt.slot = declare(stmt.name, stmt);
         define(stmt.name);
 
         if (stmt.superclass != null &&
@@ -216,12 +393,9 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
 
         if (stmt.superclass != null) {
             beginScope();
-            scopes.peek().put("super", true);
+            defineSynthetic("super");
         }
 
-        beginScope();
-        scopes.peek().put("acesta", true);
-
         for (Stmt.Function method : stmt.methods) {
             FunctionType declaration = FunctionType.METHOD;
             if (method.name.lexeme.equals("init")) {
@@ -231,8 +405,6 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
             resolveFunction(method, declaration);
         }
 
-        endScope();
-
         if (stmt.superclass != null) endScope();
 
         currentClass = enclosingClass;
@@ -252,6 +424,21 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
         return null;
     }
 
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) {
+        resolve(expr.object);
+        resolve(expr.index);
+        return null;
+    }
+
+    @Override
+    public Void visitSetIndexExpr(Expr.SetIndex expr) {
+        resolve(expr.object);
+        resolve(expr.index);
+        resolve(expr.value);
+        return null;
+    }
+
     @Override
     public Void visitSuperExpr(Expr.Super expr) {
         if (currentClass == ClassType.NONE) {
@@ -260,9 +447,15 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
         } else if (currentClass != ClassType.SUBCLASS) {
             Main.error(expr.keyword,
                     "Can't use 'super' in a class with no superclass.");
+        } else {
+            // The superclass always comes from outside the method.
+            expr.upvalue = upvalue(function, scopeOf(expr.keyword),
+                    expr.keyword);
+            expr.receiver = new Expr.This(new Token(TokenType.ACESTA,
+                    "acesta", null, expr.keyword.line));
+            resolve(expr.receiver);
         }
 
-        resolveLocal(expr, expr.keyword);
         return null;
     }
 
@@ -274,7 +467,13 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
             return null;
         }
 
-        resolveLocal(expr, expr.keyword);
+        int scope = scopeOf(expr.keyword);
+        if (scope >= function.base) {
+            expr.depth = depth(scope);
+            expr.slot = local(scope, expr.keyword).slot;
+        } else if (scope >= 0) {
+            expr.upvalue = upvalue(function, scope, expr.keyword);
+        }
         return null;
     }
 
@@ -289,14 +488,35 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     private void resolveFunction(Stmt.Function function, FunctionType type) {
         FunctionType enclosingFunction = currentFunction;
         currentFunction = type;
+        int enclosingLoops = loops;
+        loops = 0;
+        FunctionScope enclosingScope = this.function;
+        this.function = new FunctionScope(enclosingScope, scopes.size());
 
         beginScope();
+        if (type == FunctionType.METHOD || type == FunctionType.INITIALIZER) {
+            defineSynthetic("acesta");
+        }
         for (Token param : function.params) {
-            declare(param);
+            declare(param, null);
             define(param);
         }
         resolve(function.body);
-        endScope();
+
+        // Parameters have no declaring statement, so they get boxed on entry.
+        List<Integer> boxed = new ArrayList<>();
+        for (Token param : function.params) {
+            Local local = local(scopes.size() - 1, param);
+            if (local.captured && local.assigned && !boxed.contains(local.slot)) {
+                boxed.add(local.slot);
+            }
+        }
+        function.boxedParams = boxed.stream().mapToInt(Integer::intValue).toArray();
+
+        function.slots = endScope();
+        function.captures = this.function.captures.toArray(new Capture[0]);
+        this.function = enclosingScope;
         currentFunction = enclosingFunction;
+        loops = enclosingLoops;
     }
 }
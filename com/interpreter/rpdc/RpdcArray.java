@@ -0,0 +1,128 @@
+package com.interpreter.rpdc;
+
+import java.util.Arrays;
+
+// A 'tablou'. While every element is a Long the elements are kept in a
+// long[], while every element is a Double in a double[]; the first element
+// that doesn't fit moves them all to an Object[] for good. Exactly one of
+// the three arrays is in use at a time. The VM uses this class too.
+public class RpdcArray {
+    private static final long[] NO_LONGS = new long[0];
+
+    private long[] longs;
+    private double[] doubles;
+    private Object[] objects;
+    private int size;
+
+    public RpdcArray() {
+        longs = NO_LONGS;
+    }
+
+    // 'size' zeroes.
+    public RpdcArray(int size) {
+        longs = new long[size];
+        this.size = size;
+    }
+
+    // Take over 'longs' or 'doubles' as they are, without copying.
+    RpdcArray(long[] longs) {
+        this.longs = longs;
+        size = longs.length;
+    }
+
+    RpdcArray(double[] doubles) {
+        this.doubles = doubles;
+        size = doubles.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // The storage while every element is a Long (or a Double), else null.
+    // Only the first size() entries are elements.
+    public long[] longs() {
+        return longs;
+    }
+
+    public double[] doubles() {
+        return doubles;
+    }
+
+    public Object get(int index) {
+        if (longs != null) return longs[index];
+        if (doubles != null) return doubles[index];
+        return objects[index];
+    }
+
+    public void set(int index, Object value) {
+        if (longs != null) {
+            if (value instanceof Long) {
+                longs[index] = (long)value;
+                return;
+            }
+            generalize(value);
+        }
+        if (doubles != null) {
+            if (value instanceof Double) {
+                doubles[index] = (double)value;
+                return;
+            }
+            generalize(value);
+        }
+        objects[index] = value;
+    }
+
+    public void add(Object value) {
+        if (size == capacity()) grow();
+        size++;
+        set(size - 1, value);
+    }
+
+    private int capacity() {
+        if (longs != null) return longs.length;
+        if (doubles != null) return doubles.length;
+        return objects.length;
+    }
+
+    private void grow() {
+        int capacity = Math.max(8, capacity() * 2);
+        if (longs != null) {
+            longs = Arrays.copyOf(longs, capacity);
+        } else if (doubles != null) {
+            doubles = Arrays.copyOf(doubles, capacity);
+        } else {
+            objects = Arrays.copyOf(objects, capacity);
+        }
+    }
+
+    // Called with the first value the current storage can't hold. If that
+    // value is the only element there is nothing to convert, and a Double
+    // just switches the storage to a double[].
+    private void generalize(Object value) {
+        int capacity = capacity();
+        if (size == 1 && value instanceof Double && longs != null) {
+            doubles = new double[capacity];
+            longs = null;
+            return;
+        }
+
+        Object[] objects = new Object[capacity];
+        for (int i = 0; i < size; i++) {
+            objects[i] = get(i);
+        }
+        this.objects = objects;
+        longs = null;
+        doubles = null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) text.append(", ");
+            text.append(Interpreter.stringify(get(i)));
+        }
+        return text.append("]").toString();
+    }
+}
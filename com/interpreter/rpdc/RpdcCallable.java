@@ -1,8 +1,27 @@
 package com.interpreter.rpdc;
 
+import java.util.Arrays;
 import java.util.List;
 
 public interface RpdcCallable {
     int arity();
     Object call(Interpreter interpreter, List<Object> arguments);
+
+    // Fixed-arity entry points, used by the interpreter for calls with up to
+    // three arguments so it doesn't have to build an argument list.
+    default Object call0(Interpreter interpreter) {
+        return call(interpreter, Arrays.asList());
+    }
+
+    default Object call1(Interpreter interpreter, Object a) {
+        return call(interpreter, Arrays.asList(a));
+    }
+
+    default Object call2(Interpreter interpreter, Object a, Object b) {
+        return call(interpreter, Arrays.asList(a, b));
+    }
+
+    default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return call(interpreter, Arrays.asList(a, b, c));
+    }
 }
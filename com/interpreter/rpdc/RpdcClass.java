@@ -6,34 +6,28 @@ import java.util.Map;
 public class RpdcClass implements RpdcCallable{
     final String name;
     final RpdcClass superclass;
-    private final Map<String, RpdcFunction> methods;
+    // Already includes every inherited method; see Interpreter.visitClassStmt.
+    final Map<String, RpdcFunction> methods;
+    private final RpdcFunction initializer;
 
     RpdcClass(String name, RpdcClass superclass,
              Map<String, RpdcFunction> methods) {
         this.superclass = superclass;
         this.name = name;
         this.methods = methods;
+        this.initializer = methods.get("init");
     }
 
     RpdcFunction findMethod(String name) {
-        if (methods.containsKey(name)) {
-            return methods.get(name);
-        }
-
-        if (superclass != null) {
-            return superclass.findMethod(name);
-        }
-
-        return null;
+        return methods.get(name);
     }
 
     @Override
     public Object call(Interpreter interpreter,
                        List<Object> arguments) {
         RpdcInstance instance = new RpdcInstance(this);
-        RpdcFunction initializer = findMethod("init");
         if (initializer != null) {
-            initializer.bind(instance).call(interpreter, arguments);
+            initializer.invoke(interpreter, instance, arguments);
         }
 
         return instance;
@@ -41,7 +35,6 @@ public class RpdcClass implements RpdcCallable{
 
     @Override
     public int arity() {
-        RpdcFunction initializer = findMethod("init");
         if (initializer == null) return 0;
         return initializer.arity();
     }
@@ -0,0 +1,162 @@
+package com.interpreter.rpdc;
+
+import java.util.Arrays;
+
+// A 'dictionar'. Entries are kept in insertion order in parallel arrays,
+// and an open-addressing table with linear probing maps hashes to entry
+// positions. Keys match with the same rules as '=', so 1 and 1.0 are the
+// same key; numbers and strings are compared without going through
+// Interpreter.isEqual. A removed entry stays in place as a tombstone until
+// the next rebuild. The VM uses this class too.
+public class RpdcDictionary {
+    private static final int EMPTY = -1;
+    private static final Object REMOVED = new Object();
+
+    // Entry position for each slot, or EMPTY. Its length is a power of two.
+    private int[] table;
+    private Object[] keys;
+    private Object[] values;
+    private int[] hashes;
+    // Entries in use, including removed ones.
+    private int count = 0;
+    private int size = 0;
+
+    public RpdcDictionary() {
+        allocate(8);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Object get(Object key) {
+        key = RpdcString.flatten(key);
+        int entry = table[slot(key, hash(key))];
+        return entry == EMPTY ? null : values[entry];
+    }
+
+    public boolean contains(Object key) {
+        key = RpdcString.flatten(key);
+        return table[slot(key, hash(key))] != EMPTY;
+    }
+
+    public void put(Object key, Object value) {
+        key = RpdcString.flatten(key);
+        int hash = hash(key);
+        int slot = slot(key, hash);
+        if (table[slot] != EMPTY) {
+            values[table[slot]] = value;
+            return;
+        }
+
+        if (count == keys.length) {
+            // Mostly tombstones: compacting is enough.
+            rebuild(size < count / 2 ? table.length : table.length * 2);
+            slot = slot(key, hash);
+        }
+
+        keys[count] = key;
+        values[count] = value;
+        hashes[count] = hash;
+        table[slot] = count++;
+        size++;
+    }
+
+    public boolean remove(Object key) {
+        key = RpdcString.flatten(key);
+        int entry = table[slot(key, hash(key))];
+        if (entry == EMPTY) return false;
+
+        keys[entry] = REMOVED;
+        values[entry] = null;
+        size--;
+        return true;
+    }
+
+    public RpdcArray keys() {
+        RpdcArray result = new RpdcArray();
+        for (int i = 0; i < count; i++) {
+            if (keys[i] != REMOVED) result.add(keys[i]);
+        }
+        return result;
+    }
+
+    // The slot holding 'key', or the empty slot where it would go.
+    private int slot(Object key, int hash) {
+        int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == EMPTY) return slot;
+            if (hashes[entry] == hash && same(keys[entry], key)) return slot;
+        }
+    }
+
+    // Keeps the table at most three quarters full.
+    private void allocate(int slots) {
+        table = new int[slots];
+        Arrays.fill(table, EMPTY);
+        int capacity = slots / 4 * 3;
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        hashes = new int[capacity];
+    }
+
+    private void rebuild(int slots) {
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        int[] oldHashes = hashes;
+        int oldCount = count;
+        allocate(slots);
+
+        count = 0;
+        int mask = slots - 1;
+        for (int i = 0; i < oldCount; i++) {
+            if (oldKeys[i] == REMOVED) continue;
+
+            int slot = oldHashes[i] & mask;
+            while (table[slot] != EMPTY) slot = (slot + 1) & mask;
+            keys[count] = oldKeys[i];
+            values[count] = oldValues[i];
+            hashes[count] = oldHashes[i];
+            table[slot] = count++;
+        }
+    }
+
+    // '=' compares a Long or BigInteger with a Double through its double
+    // value, so every number hashes by its double value to keep keys that
+    // are equal in the same chain. 0.0 and -0.0 are equal too.
+    private static int hash(Object key) {
+        int hash;
+        if (key == null) {
+            hash = 0;
+        } else if (Numbers.isNumber(key)) {
+            double number = Numbers.toDouble(key);
+            hash = number == 0 ? 0 : Double.hashCode(number);
+        } else {
+            hash = key.hashCode();
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean same(Object a, Object b) {
+        if (a == b) return true;
+        if (a instanceof String) return a.equals(b);
+        if (a instanceof Long && b instanceof Long) return (long)a == (long)b;
+        return Interpreter.isEqual(a, b);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("{");
+        boolean first = true;
+        for (int i = 0; i < count; i++) {
+            if (keys[i] == REMOVED) continue;
+
+            if (!first) text.append(", ");
+            first = false;
+            text.append(Interpreter.stringify(keys[i])).append(": ")
+                    .append(Interpreter.stringify(values[i]));
+        }
+        return text.append("}").toString();
+    }
+}
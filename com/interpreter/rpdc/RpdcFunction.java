@@ -4,21 +4,27 @@ import java.util.List;
 
 public class RpdcFunction implements RpdcCallable{
     private final Stmt.Function declaration;
-    private final Environment closure;
-    private final boolean isInitializer;
+    // Only the variables the body uses from enclosing functions, in the
+    // order of declaration.captures.
+    private final Object[] upvalues;
+    private final FunctionType type;
+    final RpdcInstance receiver;
 
-    RpdcFunction(Stmt.Function declaration, Environment closure,
-                boolean isInitializer) {
-        this.isInitializer = isInitializer;
-        this.closure = closure;
+    RpdcFunction(Stmt.Function declaration, Object[] upvalues,
+                FunctionType type) {
+        this(declaration, upvalues, type, null);
+    }
+
+    private RpdcFunction(Stmt.Function declaration, Object[] upvalues,
+                         FunctionType type, RpdcInstance receiver) {
+        this.type = type;
+        this.upvalues = upvalues;
         this.declaration = declaration;
+        this.receiver = receiver;
     }
 
     RpdcFunction bind(RpdcInstance instance) {
-        Environment environment = new Environment(closure);
-        environment.define("acesta", instance);
-        return new RpdcFunction(declaration, environment,
-                isInitializer);
+        return new RpdcFunction(declaration, upvalues, type, instance);
     }
 
     @Override
@@ -28,21 +34,124 @@ public class RpdcFunction implements RpdcCallable{
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(closure);
+        return invoke(interpreter, receiver, arguments);
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return run(interpreter, frame(receiver), receiver);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        Environment environment = frame(receiver);
+        int slot = firstParam();
+        environment.define(slot, a);
+        return run(interpreter, environment, receiver);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        Environment environment = frame(receiver);
+        int slot = firstParam();
+        environment.define(slot, a);
+        environment.define(slot + 1, b);
+        return run(interpreter, environment, receiver);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        Environment environment = frame(receiver);
+        int slot = firstParam();
+        environment.define(slot, a);
+        environment.define(slot + 1, b);
+        environment.define(slot + 2, c);
+        return run(interpreter, environment, receiver);
+    }
+
+    Object invoke(Interpreter interpreter, RpdcInstance receiver,
+                  List<Object> arguments) {
+        Environment environment = frame(receiver);
+        int slot = firstParam();
         for (int i = 0; i < declaration.params.size(); i++) {
-            environment.define(declaration.params.get(i).lexeme,
-                    arguments.get(i));
+            environment.define(slot + i, arguments.get(i));
+        }
+
+        return run(interpreter, environment, receiver);
+    }
+
+    // Methods keep 'acesta' in slot 0 of their own frame, so calling one
+    // directly on a receiver needs no bound copy of the function. The
+    // parameters follow it, starting at firstParam().
+    Environment frame(RpdcInstance receiver) {
+        Environment environment = declaration.spare;
+        if (environment == null) {
+            environment = new Environment(null, declaration.slots);
+        } else {
+            declaration.spare = null;
         }
 
+        if (type != FunctionType.FUNCTION) environment.define(0, receiver);
+        return environment;
+    }
+
+    int firstParam() {
+        return type == FunctionType.FUNCTION ? 0 : 1;
+    }
+
+    // A tail call comes back from the body as a RETURN with the callee and
+    // its frame left in the interpreter, and is run by this loop, so it
+    // doesn't grow the Java stack or count against Interpreter.maxCallDepth.
+    Object run(Interpreter interpreter, Environment environment,
+               RpdcInstance receiver) {
+        if (interpreter.callDepth == interpreter.maxCallDepth) {
+            release(environment);
+            throw new RuntimeError(null, "Stack overflow.");
+        }
+
+        interpreter.callDepth++;
         try {
-            interpreter.executeBlock(declaration.body, environment);
-        } catch (Return returnValue) {
-            if (isInitializer) return closure.getAt(0, "acesta");
-            return returnValue.value;
+            RpdcFunction function = this;
+            for (;;) {
+                for (int slot : function.declaration.boxedParams) {
+                    environment.define(slot,
+                            new Box(environment.getAt(0, slot)));
+                }
+
+                Completion completion;
+                try {
+                    completion = interpreter.executeBody(
+                            function.declaration.body, environment,
+                            function.upvalues);
+                } finally {
+                    function.release(environment);
+                }
+
+                if (completion == Completion.RETURN &&
+                        interpreter.tailFunction != null) {
+                    function = interpreter.tailFunction;
+                    environment = interpreter.tailFrame;
+                    interpreter.tailFunction = null;
+                    interpreter.tailFrame = null;
+                    receiver = function.receiver;
+                    continue;
+                }
+
+                Object value = interpreter.returnValue;
+                interpreter.returnValue = null;
+                if (function.type == FunctionType.INITIALIZER) return receiver;
+                return value;
+            }
+        } finally {
+            interpreter.callDepth--;
         }
+    }
 
-        if (isInitializer) return closure.getAt(0, "acesta");
-        return null;
+    // Closures copy what they use out of the frame, so it is always kept
+    // for the next call.
+    private void release(Environment environment) {
+        environment.clear();
+        declaration.spare = environment;
     }
 
     @Override
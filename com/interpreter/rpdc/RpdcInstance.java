@@ -1,19 +1,22 @@
 package com.interpreter.rpdc;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class RpdcInstance {
-    private RpdcClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    private static final Object[] NO_FIELDS = new Object[0];
+
+    final RpdcClass klass;
+    Shape shape = Shape.ROOT;
+    Object[] fields = NO_FIELDS;
 
     RpdcInstance(RpdcClass klass) {
         this.klass = klass;
     }
 
     Object get(Token name) {
-        if (fields.containsKey(name.lexeme)) {
-            return fields.get(name.lexeme);
+        int index = shape.indexOf(name.lexeme);
+        if (index >= 0) {
+            return fields[index];
         }
 
         RpdcFunction method = klass.findMethod(name.lexeme);
@@ -24,7 +27,23 @@ public class RpdcInstance {
     }
 
     void set(Token name, Object value) {
-        fields.put(name.lexeme, value);
+        int index = shape.indexOf(name.lexeme);
+        if (index < 0) {
+            index = shape.size();
+            put(index, shape.transition(name.lexeme), value);
+        } else {
+            fields[index] = value;
+        }
+    }
+
+    // Stores into a slot the caller already resolved against the current
+    // shape, moving to 'next' when the store adds a field.
+    void put(int index, Shape next, Object value) {
+        if (index >= fields.length) {
+            fields = Arrays.copyOf(fields, Math.max(4, fields.length * 2));
+        }
+        fields[index] = value;
+        shape = next;
     }
 
     @Override
@@ -0,0 +1,72 @@
+package com.interpreter.rpdc;
+
+// A long string made by '+', standing in for a String. Adding onto the end
+// of one appends to a StringBuilder it shares with the strings it was made
+// from, each of which sees only the first 'length' characters, so a string
+// built up piece by piece copies every piece once rather than the whole
+// string each time. The String itself is only made when something reads
+// it through toString(); code that looks at strings should go through
+// isString, length and flatten. The VM builds its strings with it too.
+public final class RpdcString {
+    // Shorter results are plain Strings; copying them is cheap.
+    private static final int MIN_LENGTH = 64;
+
+    private final StringBuilder buffer;
+    private final int length;
+    private String flat;
+
+    private RpdcString(StringBuilder buffer, int length) {
+        this.buffer = buffer;
+        this.length = length;
+    }
+
+    public static boolean isString(Object value) {
+        return value instanceof String || value instanceof RpdcString;
+    }
+
+    public static int length(Object string) {
+        if (string instanceof RpdcString) return ((RpdcString)string).length;
+        return ((String)string).length();
+    }
+
+    // The String for 'value' if it is an RpdcString, else 'value'.
+    public static Object flatten(Object value) {
+        if (value instanceof RpdcString) return value.toString();
+        return value;
+    }
+
+    // Both operands must satisfy isString.
+    public static Object concat(Object left, Object right) {
+        int length = length(left) + length(right);
+        if (length < MIN_LENGTH) return left.toString() + right.toString();
+
+        // Only the newest string on a buffer can append to it in place.
+        if (left instanceof RpdcString &&
+                ((RpdcString)left).buffer.length() == length(left)) {
+            StringBuilder buffer = ((RpdcString)left).buffer;
+            append(buffer, right);
+            return new RpdcString(buffer, length);
+        }
+
+        StringBuilder buffer = new StringBuilder(length * 2);
+        append(buffer, left);
+        append(buffer, right);
+        return new RpdcString(buffer, length);
+    }
+
+    private static void append(StringBuilder buffer, Object string) {
+        if (string instanceof RpdcString &&
+                ((RpdcString)string).buffer != buffer) {
+            RpdcString rope = (RpdcString)string;
+            buffer.append(rope.buffer, 0, rope.length);
+        } else {
+            buffer.append(string.toString());
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (flat == null) flat = buffer.substring(0, length);
+        return flat;
+    }
+}
@@ -1,5 +1,6 @@
 package com.interpreter.rpdc;
 
+import java.math.BigInteger;
 import java.util.*;
 
 import static com.interpreter.rpdc.TokenType.*;
@@ -30,6 +31,8 @@ public class Scanner {
         keywords.put("adevarat", ADEVARAT);
         keywords.put("variabila", VARIABILA);
         keywords.put("cattimp", CAT_TIMP);
+        keywords.put("opreste", OPRESTE);
+        keywords.put("continua", CONTINUA);
         keywords.put("procedura", PROCEDURA);
     }
 
@@ -59,6 +62,12 @@ public class Scanner {
             case '{':
                 addToken(ACOLADA_STANGA);
                 break;
+            case '[':
+                addToken(CROSET_STANGA);
+                break;
+            case ']':
+                addToken(CROSET_DREAPTA);
+                break;
             case '}':
                 addToken(ACOLADA_DREAPTA);
                 break;
@@ -80,6 +89,9 @@ public class Scanner {
             case '*':
                 addToken(STAR);
                 break;
+            case '%':
+                addToken(PROCENT);
+                break;
             case '!':
                 addToken(match('=') ? NEGARE_EGAL : NEGARE);
                 break;
@@ -145,9 +157,13 @@ public class Scanner {
         if (peek() == '.' && isDigit(peekNext())){
             advance();
             while(isDigit(peek()))  advance();
+            addToken(NUMAR, Double.parseDouble(source.substring(start, current)));
+            return;
         }
 
-        addToken(NUMAR, Double.parseDouble(source.substring(start, current)));
+        // Without a fraction it's an integer, as large as it needs to be.
+        addToken(NUMAR, Numbers.normalize(
+                new BigInteger(source.substring(start, current))));
     }
 
     private void string() {
@@ -0,0 +1,45 @@
+package com.interpreter.rpdc;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+// The layout of an instance's fields: which slot each field name lives in.
+// Shapes are shared between every instance that added the same fields in the
+// same order, so Expr.Get and Expr.Set can cache a field's slot per shape.
+class Shape {
+    static final Shape ROOT = new Shape(new HashMap<>());
+
+    private final Map<String, Integer> slots;
+    private final Map<String, Shape> transitions = new HashMap<>();
+
+    private Shape(Map<String, Integer> slots) {
+        this.slots = slots;
+    }
+
+    int indexOf(String name) {
+        Integer slot = slots.get(name);
+        if (slot == null) return -1;
+        return slot;
+    }
+
+    int size() {
+        return slots.size();
+    }
+
+    Set<String> names() {
+        return slots.keySet();
+    }
+
+    Shape transition(String name) {
+        Shape next = transitions.get(name);
+        if (next == null) {
+            Map<String, Integer> nextSlots = new HashMap<>(slots);
+            nextSlots.put(name, slots.size());
+            next = new Shape(nextSlots);
+            transitions.put(name, next);
+        }
+
+        return next;
+    }
+}
@@ -0,0 +1,144 @@
+package com.interpreter.rpdc;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+// The 'siruri' module: string functions. Positions count characters from
+// 0, like lungime does.
+final class Siruri {
+    // The number literals the Scanner accepts, optionally negative.
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?");
+
+    private Siruri() {}
+
+    static RpdcInstance module() {
+        RpdcInstance module = Biblioteca.module("siruri");
+        Biblioteca.define(module, "subsir", 3, Siruri::substring);
+        Biblioteca.define(module, "cod", 2, Siruri::code);
+        Biblioteca.define(module, "caracter", 1, Siruri::character);
+        Biblioteca.define(module, "cauta", 2, Siruri::indexOf);
+        Biblioteca.define(module, "majuscule", 1, (interpreter, arguments) ->
+                string(arguments.get(0)).toUpperCase(Locale.ROOT));
+        Biblioteca.define(module, "minuscule", 1, (interpreter, arguments) ->
+                string(arguments.get(0)).toLowerCase(Locale.ROOT));
+        Biblioteca.define(module, "separa", 2, Siruri::split);
+        Biblioteca.define(module, "uneste", 2, Siruri::join);
+        Biblioteca.define(module, "numar", 1, Siruri::parse);
+        Biblioteca.define(module, "text", 1, (interpreter, arguments) ->
+                Interpreter.stringify(arguments.get(0)));
+        return module;
+    }
+
+    // subsir(s, inceput, sfarsit): the characters from 'inceput' up to, but
+    // not including, 'sfarsit'.
+    private static Object substring(Interpreter interpreter,
+                                    List<Object> arguments) {
+        String string = string(arguments.get(0));
+        int start = position(arguments.get(1), string);
+        int end = position(arguments.get(2), string);
+        if (start > end) {
+            throw new RuntimeError(null,
+                    "Substring start " + start + " is after its end " + end + ".");
+        }
+        return string.substring(start, end);
+    }
+
+    // cod(s, i): the code of the character at i.
+    private static Object code(Interpreter interpreter,
+                               List<Object> arguments) {
+        String string = string(arguments.get(0));
+        int index = position(arguments.get(1), string);
+        if (index == string.length()) throw outOfBounds(index, string);
+        return (long)string.charAt(index);
+    }
+
+    // caracter(c): the one-character string with code c.
+    private static Object character(Interpreter interpreter,
+                                    List<Object> arguments) {
+        Object code = arguments.get(0);
+        if (!(code instanceof Long) || (long)code < 0 ||
+                (long)code > Character.MAX_VALUE) {
+            throw new RuntimeError(null,
+                    "Character code must be an integer from 0 to 65535.");
+        }
+        return String.valueOf((char)(long)code);
+    }
+
+    // cauta(s, t): where t first appears in s, or -1.
+    private static Object indexOf(Interpreter interpreter,
+                                  List<Object> arguments) {
+        return (long)string(arguments.get(0))
+                .indexOf(string(arguments.get(1)));
+    }
+
+    // separa(s, separator): the pieces of s between separators, as an array.
+    private static Object split(Interpreter interpreter,
+                                List<Object> arguments) {
+        String string = string(arguments.get(0));
+        String separator = string(arguments.get(1));
+        if (separator.isEmpty()) {
+            throw new RuntimeError(null, "Separator can't be empty.");
+        }
+
+        RpdcArray pieces = new RpdcArray();
+        int start = 0;
+        for (int end; (end = string.indexOf(separator, start)) >= 0;
+             start = end + separator.length()) {
+            pieces.add(string.substring(start, end));
+        }
+        pieces.add(string.substring(start));
+        return pieces;
+    }
+
+    // uneste(a, separator): the elements of a written one after another,
+    // with separator between them.
+    private static Object join(Interpreter interpreter,
+                               List<Object> arguments) {
+        if (!(arguments.get(0) instanceof RpdcArray)) {
+            throw new RuntimeError(null, "Expected an array.");
+        }
+        RpdcArray array = (RpdcArray)arguments.get(0);
+        String separator = string(arguments.get(1));
+
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < array.size(); i++) {
+            if (i > 0) text.append(separator);
+            text.append(Interpreter.stringify(array.get(i)));
+        }
+        return text.toString();
+    }
+
+    // numar(s): the number written in s, or nimic if s isn't one.
+    private static Object parse(Interpreter interpreter,
+                                List<Object> arguments) {
+        String text = string(arguments.get(0)).strip();
+        if (!NUMBER.matcher(text).matches()) return null;
+
+        if (text.indexOf('.') >= 0) return Double.parseDouble(text);
+        return Numbers.normalize(new BigInteger(text));
+    }
+
+    private static String string(Object value) {
+        if (RpdcString.isString(value)) return value.toString();
+        throw new RuntimeError(null, "Expected a string.");
+    }
+
+    // A position from 0 to the length of 'string', both included.
+    private static int position(Object value, String string) {
+        if (!(value instanceof Long)) {
+            throw new RuntimeError(null, "String index must be an integer.");
+        }
+        long index = (long)value;
+        if (index < 0 || index > string.length()) {
+            throw outOfBounds(index, string);
+        }
+        return (int)index;
+    }
+
+    private static RuntimeError outOfBounds(long index, String string) {
+        return new RuntimeError(null, "String index " + index +
+                " out of bounds for length " + string.length() + ".");
+    }
+}
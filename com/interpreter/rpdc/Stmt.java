@@ -5,8 +5,12 @@ import java.util.List;
 abstract class Stmt {
     interface Visitor<R> {
     R visitBlockStmt(Block stmt);
+    R visitBreakStmt(Break stmt);
     R visitClassStmt(Class stmt);
+    R visitCountStmt(Count stmt);
+    R visitContinueStmt(Continue stmt);
     R visitExpressionStmt(Expression stmt);
+    R visitForStmt(For stmt);
     R visitFunctionStmt(Function stmt);
     R visitIfStmt(If stmt);
     R visitPrintStmt(Print stmt);
@@ -25,6 +29,21 @@ abstract class Stmt {
     }
 
         final List<Stmt> statements;
+
+        int slots;
+        Environment spare;
+    }
+  static class Break extends Stmt {
+        Break(Token keyword) {
+            this.keyword = keyword;
+        }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitBreakStmt(this);
+    }
+
+        final Token keyword;
     }
   static class Class extends Stmt {
         Class(Token name, Expr.Variable superclass, List<Stmt.Function> methods) {
@@ -41,6 +60,43 @@ abstract class Stmt {
         final Token name;
         final Expr.Variable superclass;
         final List<Stmt.Function> methods;
+
+        int slot = -1;
+        boolean boxed;
+    }
+  static class Count extends Stmt {
+        Count(Token name, Expr from, Expr to, Expr step, Stmt body) {
+            this.name = name;
+            this.from = from;
+            this.to = to;
+            this.step = step;
+            this.body = body;
+        }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitCountStmt(this);
+    }
+
+        final Token name;
+        final Expr from;
+        final Expr to;
+        final Expr step;
+        final Stmt body;
+
+        boolean boxed;
+    }
+  static class Continue extends Stmt {
+        Continue(Token keyword) {
+            this.keyword = keyword;
+        }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitContinueStmt(this);
+    }
+
+        final Token keyword;
     }
   static class Expression extends Stmt {
         Expression(Expr expression) {
@@ -54,6 +110,26 @@ abstract class Stmt {
 
         final Expr expression;
     }
+  static class For extends Stmt {
+        For(Stmt initializer, Expr condition, Expr increment, Stmt body) {
+            this.initializer = initializer;
+            this.condition = condition;
+            this.increment = increment;
+            this.body = body;
+        }
+
+    @Override
+    <R> R accept(Visitor<R> visitor) {
+        return visitor.visitForStmt(this);
+    }
+
+        final Stmt initializer;
+        final Expr condition;
+        final Expr increment;
+        final Stmt body;
+
+        int slots;
+    }
   static class Function extends Stmt {
         Function(Token name, List<Token> params, List<Stmt> body) {
             this.name = name;
@@ -69,6 +145,13 @@ abstract class Stmt {
         final Token name;
         final List<Token> params;
         final List<Stmt> body;
+
+        int slot = -1;
+        int slots;
+        Environment spare;
+        boolean boxed;
+        int[] boxedParams = {};
+        Capture[] captures = {};
     }
   static class If extends Stmt {
         If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
@@ -111,6 +194,8 @@ abstract class Stmt {
 
         final Token keyword;
         final Expr value;
+
+        boolean tail;
     }
   static class Var extends Stmt {
         Var(Token name, Expr initializer) {
@@ -125,6 +210,9 @@ abstract class Stmt {
 
         final Token name;
         final Expr initializer;
+
+        int slot = -1;
+        boolean boxed;
     }
   static class While extends Stmt {
         While(Expr condition, Stmt body) {
@@ -3,7 +3,8 @@ package com.interpreter.rpdc;
 enum TokenType {
     // Single-character tokens
     PARANTEZA_STANGA, PARANTEZA_DREAPTA, ACOLADA_STANGA, ACOLADA_DREAPTA,
-    VIRGULA, PUNCT, MINUS, PLUS, PUNCT_SI_VIRGULA, SLASH, STAR,
+    CROSET_STANGA, CROSET_DREAPTA,
+    VIRGULA, PUNCT, MINUS, PLUS, PUNCT_SI_VIRGULA, SLASH, STAR, PROCENT,
 
     // One or two character tokens
     NEGARE, NEGARE_EGAL,
@@ -17,6 +18,7 @@ enum TokenType {
     // Keywords (Romanian)
     SI, CLASA, ALTFEL, FALS, FUNCTIE, PENTRU, DACA, NIMIC, SAU,
     SCRIE, INTOARCE, SUPER, ACESTA, ADEVARAT, VARIABILA, CAT_TIMP,
+    OPRESTE, CONTINUA,
 
     //vad daca il folosesc
     PROCEDURA,
@@ -14,29 +14,37 @@ public class GenerateAst {
         String outputDir = args[0];
 
         defineAST(outputDir, "Expr", Arrays.asList(
-                "Assign   : Token name, Expr value",
-                "Binary   : Expr left, Token operator, Expr right",
+                "Array    : Token bracket, List<Expr> elements",
+                "Assign   : Token name, Expr value | int depth = -1, int slot, int upvalue = -1",
+                "Binary   : Expr left, Token operator, Expr right | BinaryNode node = BinaryNode.UNINITIALIZED",
                 "Call     : Expr callee, Token paren, List<Expr> arguments",
-                "Get      : Expr object, Token name",
+                "Get      : Expr object, Token name | Shape shape, int index",
                 "Grouping : Expr expression",
+                "Index    : Expr object, Token bracket, Expr index",
                 "Literal  : Object value",
                 "Logical  : Expr left, Token operator, Expr right",
-                "Set      : Expr object, Token name, Expr value",
-                "Super    : Token keyword, Token method",
-                "This     : Token keyword",
+                "Set      : Expr object, Token name, Expr value | Shape shape, Shape transition, int index",
+                "SetIndex : Expr object, Token bracket, Expr index, Expr value",
+                "Super    : Token keyword, Token method | int upvalue = -1, Expr.This receiver",
+                "This     : Token keyword | int depth = -1, int slot, int upvalue = -1",
                 "Unary    : Token operator, Expr right",
-                "Variable : Token name"
+                "Variable : Token name | int depth = -1, int slot, int upvalue = -1"
         ));
 
         defineAST(outputDir, "Stmt", Arrays.asList(
-                "Block      : List<Stmt> statements",
-                "Class      : Token name, Expr.Variable superclass, List<Stmt.Function> methods",
+                "Block      : List<Stmt> statements | int slots, Environment spare",
+                "Break      : Token keyword",
+                "Class      : Token name, Expr.Variable superclass, List<Stmt.Function> methods | int slot = -1, boolean boxed",
+                "Count      : Token name, Expr from, Expr to, Expr step, Stmt body | boolean boxed",
+                "Continue   : Token keyword",
                 "Expression : Expr expression",
-                "Function   : Token name, List<Token> params," + " List<Stmt> body",
+                "For        : Stmt initializer, Expr condition, Expr increment, Stmt body | int slots",
+                "Function   : Token name, List<Token> params," + " List<Stmt> body | int slot = -1, int slots, Environment spare, boolean boxed," +
+                        " int[] boxedParams = {}, Capture[] captures = {}",
                 "If         : Expr condition, Stmt thenBranch," + " Stmt elseBranch",
                 "Print      : Expr expression",
-                "Return     : Token keyword, Expr value",
-                "Var        : Token name, Expr initializer",
+                "Return     : Token keyword, Expr value | boolean tail",
+                "Var        : Token name, Expr initializer | int slot = -1, boolean boxed",
                 "While      : Expr condition, Stmt body"
         ));
 
@@ -56,8 +64,9 @@ public class GenerateAst {
 
         for (String type : types) {
             String className = type.split(":")[0].trim();
-            String fields = type.split(":")[1].trim();
-            defineType(writer, baseName, className, fields);
+            String[] fields = type.split(":")[1].split("\\|");
+            String resolved = fields.length > 1 ? fields[1].trim() : null;
+            defineType(writer, baseName, className, fields[0].trim(), resolved);
         }
 
         writer.println();
@@ -78,7 +87,9 @@ public class GenerateAst {
         writer.println("    }");
     }
 
-    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList) {
+    // Fields after '|' are not constructor parameters; later passes fill them in.
+    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList,
+                                   String resolvedList) {
         writer.println("  static class " + className + " extends " + baseName + " {");
 
         writer.println("        " + className + "(" + fieldList + ") {");
@@ -105,6 +116,13 @@ public class GenerateAst {
             writer.println("        final " + field + ";");
         }
 
+        if (resolvedList != null) {
+            writer.println();
+            for (String field : resolvedList.split(", ")) {
+                writer.println("        " + field + ";");
+            }
+        }
+
         writer.println("    }");
     }
 }
\ No newline at end of file
@@ -0,0 +1,8 @@
+package com.interpreter.rpdc.vm;
+
+class CallFrame {
+    ObjClosure closure;
+    int ip;
+    // Stack index of slot zero (the callee or receiver) of this frame.
+    int slots;
+}
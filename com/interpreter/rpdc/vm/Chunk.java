@@ -0,0 +1,104 @@
+package com.interpreter.rpdc.vm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class Chunk {
+    byte[] code = new byte[16];
+    private int count = 0;
+
+    Object[] constants = new Object[8];
+    // Globals named by the matching string constants, linked on first use.
+    Global[] globals = new Global[8];
+    private int constantCount = 0;
+    private final Map<Object, Integer> constantIndex = new HashMap<>();
+
+    // Operands of NUMBER, as the bits of a double, and of INTEGER, as the
+    // long itself, in one table.
+    long[] numbers = new long[8];
+    private int numberCount = 0;
+    private final Map<Long, Integer> numberIndex = new HashMap<>();
+    private final Map<Long, Integer> integerIndex = new HashMap<>();
+
+    // Run-length line table: the bytes from lineStarts[i] up to the next
+    // start all belong to source line lineNumbers[i].
+    private int[] lineStarts = new int[8];
+    private int[] lineNumbers = new int[8];
+    private int lineCount = 0;
+
+    public void write(int value, int line) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+        }
+        code[count] = (byte) value;
+
+        if (lineCount == 0 || lineNumbers[lineCount - 1] != line) {
+            if (lineCount == lineStarts.length) {
+                lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                lineNumbers = Arrays.copyOf(lineNumbers, lineCount * 2);
+            }
+            lineStarts[lineCount] = count;
+            lineNumbers[lineCount] = line;
+            lineCount++;
+        }
+
+        count++;
+    }
+
+    public void patch(int offset, int value) {
+        code[offset] = (byte) value;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int addConstant(Object value) {
+        Integer index = constantIndex.get(value);
+        if (index != null) return index;
+
+        if (constantCount == constants.length) {
+            constants = Arrays.copyOf(constants, constantCount * 2);
+            globals = Arrays.copyOf(globals, constantCount * 2);
+        }
+        constants[constantCount] = value;
+        constantIndex.put(value, constantCount);
+        return constantCount++;
+    }
+
+    public int addNumber(double value) {
+        return addNumber(Double.doubleToRawLongBits(value), numberIndex);
+    }
+
+    public int addInteger(long value) {
+        return addNumber(value, integerIndex);
+    }
+
+    private int addNumber(long value, Map<Long, Integer> index) {
+        Integer existing = index.get(value);
+        if (existing != null) return existing;
+
+        if (numberCount == numbers.length) {
+            numbers = Arrays.copyOf(numbers, numberCount * 2);
+        }
+        numbers[numberCount] = value;
+        index.put(value, numberCount);
+        return numberCount++;
+    }
+
+    int getLine(int offset) {
+        int low = 0;
+        int high = lineCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (lineStarts[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        return lineNumbers[low];
+    }
+}
@@ -0,0 +1,10 @@
+package com.interpreter.rpdc.vm;
+
+// A global variable's storage. Like a stack slot, a number is kept unboxed
+// in 'number' with 'value' set to the VM's NUMBER or INTEGER tag.
+class Global {
+    Object value = null;
+    long number = 0;
+    boolean defined = false;
+    boolean module = false;
+}
@@ -0,0 +1,19 @@
+package com.interpreter.rpdc.vm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+class ObjClass {
+    final String name;
+    final Map<String, ObjClosure> methods = new HashMap<>();
+    ObjClosure initializer = null;
+
+    ObjClass(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,30 @@
+package com.interpreter.rpdc.vm;
+
+public class ObjFunction {
+    final String name;
+    final Chunk chunk = new Chunk();
+    int arity = 0;
+    int upvalueCount = 0;
+
+    public ObjFunction(String name) {
+        this.name = name;
+    }
+
+    public Chunk chunk() {
+        return chunk;
+    }
+
+    public void setArity(int arity) {
+        this.arity = arity;
+    }
+
+    public void setUpvalueCount(int upvalueCount) {
+        this.upvalueCount = upvalueCount;
+    }
+
+    @Override
+    public String toString() {
+        if (name == null) return "<script>";
+        return "<fn " + name + ">";
+    }
+}
@@ -0,0 +1,13 @@
+package com.interpreter.rpdc.vm;
+
+class ObjUpvalue {
+    // Index of the captured stack slot while it is open, -1 once closed.
+    int location;
+    Object closed = null;
+    long closedNumber = 0;
+    ObjUpvalue next = null;
+
+    ObjUpvalue(int location) {
+        this.location = location;
+    }
+}
@@ -0,0 +1,56 @@
+package com.interpreter.rpdc.vm;
+
+public final class OpCode {
+    public static final byte CONSTANT = 0;
+    public static final byte NIL = 1;
+    public static final byte TRUE = 2;
+    public static final byte FALSE = 3;
+    public static final byte POP = 4;
+    public static final byte GET_LOCAL = 5;
+    public static final byte SET_LOCAL = 6;
+    public static final byte GET_GLOBAL = 7;
+    public static final byte DEFINE_GLOBAL = 8;
+    public static final byte SET_GLOBAL = 9;
+    public static final byte GET_UPVALUE = 10;
+    public static final byte SET_UPVALUE = 11;
+    public static final byte GET_PROPERTY = 12;
+    public static final byte SET_PROPERTY = 13;
+    public static final byte GET_SUPER = 14;
+    public static final byte EQUAL = 15;
+    public static final byte NOT_EQUAL = 16;
+    public static final byte GREATER = 17;
+    public static final byte GREATER_EQUAL = 18;
+    public static final byte LESS = 19;
+    public static final byte LESS_EQUAL = 20;
+    public static final byte ADD = 21;
+    public static final byte SUBTRACT = 22;
+    public static final byte MULTIPLY = 23;
+    public static final byte DIVIDE = 24;
+    public static final byte NOT = 25;
+    public static final byte NEGATE = 26;
+    public static final byte PRINT = 27;
+    public static final byte JUMP = 28;
+    public static final byte JUMP_IF_FALSE = 29;
+    public static final byte LOOP = 30;
+    public static final byte CALL = 31;
+    public static final byte INVOKE = 32;
+    public static final byte SUPER_INVOKE = 33;
+    public static final byte CLOSURE = 34;
+    public static final byte CLOSE_UPVALUE = 35;
+    public static final byte RETURN = 36;
+    public static final byte CLASS = 37;
+    public static final byte INHERIT = 38;
+    public static final byte METHOD = 39;
+    public static final byte NUMBER = 40;
+    public static final byte FOR_PREP = 41;
+    public static final byte FOR_LOOP = 42;
+    public static final byte MODULO = 43;
+    public static final byte INTEGER = 44;
+    public static final byte NEW_ARRAY = 45;
+    public static final byte GET_INDEX = 46;
+    public static final byte CHECK_INDEX = 47;
+    public static final byte SET_INDEX = 48;
+    public static final byte TAIL_CALL = 49;
+
+    private OpCode() {}
+}
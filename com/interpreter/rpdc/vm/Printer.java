@@ -0,0 +1,12 @@
+package com.interpreter.rpdc.vm;
+
+// Where the VM sends what 'scrie' prints, one line per call. Numbers come
+// as longs or doubles so the printer can format them without making a
+// String.
+public interface Printer {
+    void println(String text);
+
+    void println(long number);
+
+    void println(double number);
+}
@@ -0,0 +1,1088 @@
+package com.interpreter.rpdc.vm;
+
+import com.interpreter.rpdc.Biblioteca;
+import com.interpreter.rpdc.Numbers;
+import com.interpreter.rpdc.RpdcArray;
+import com.interpreter.rpdc.RpdcCallable;
+import com.interpreter.rpdc.RpdcDictionary;
+import com.interpreter.rpdc.RpdcString;
+import com.interpreter.rpdc.RuntimeError;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class VM {
+    public static final long DEFAULT_STACK_BUDGET = 64L << 20;
+
+    // Rough heap cost of one stack slot (a reference plus a long) and of
+    // one CallFrame, used to keep the call stack within its memory budget.
+    private static final long SLOT_BYTES = 12;
+    private static final long FRAME_BYTES = 32;
+
+    // Numbers never live on the stack as Doubles or Longs: a slot holding
+    // one has a tag in 'stack' and the value itself in 'numbers', as the
+    // bits of a double for NUMBER and as the long for INTEGER. Values are
+    // only boxed when they move into the heap (fields, natives). Integers
+    // too large for a long stay BigIntegers, like in the tree-walk
+    // interpreter, and go through Numbers.
+    private static final Object NUMBER = new Object() {
+        @Override
+        public String toString() {
+            return "<number>";
+        }
+    };
+    private static final Object INTEGER = new Object() {
+        @Override
+        public String toString() {
+            return "<integer>";
+        }
+    };
+
+    private Object[] stack = new Object[256];
+    private long[] numbers = new long[256];
+    private int stackTop = 0;
+    private CallFrame[] frames = new CallFrame[64];
+    private int frameCount = 0;
+    private final Map<String, Global> globals = new HashMap<>();
+    private ObjUpvalue openUpvalues = null;
+    private final long stackBudget;
+    private final Printer printer;
+
+    public VM(long stackBudget, Printer printer) {
+        this.stackBudget = stackBudget;
+        this.printer = printer;
+        defineNative("clock", 0,
+                arguments -> (double)System.currentTimeMillis() / 1000.0);
+        defineNative("tablou", 1, VM::newArray);
+        defineNative("lungime", 1, VM::length);
+        defineNative("adauga", 2, VM::append);
+        defineNative("dictionar", 0, arguments -> new RpdcDictionary());
+        defineNative("contine", 2, arguments ->
+                dictionary(arguments[0]).contains(arguments[1]));
+        defineNative("sterge", 2, arguments ->
+                dictionary(arguments[0]).remove(arguments[1]));
+        defineNative("chei", 1, arguments ->
+                dictionary(arguments[0]).keys());
+    }
+
+    // The same natives as the tree-walk interpreter's, with the same
+    // errors.
+
+    // tablou(n): an array of n zeroes.
+    private static Object newArray(Object[] arguments) {
+        Object size = arguments[0];
+        if (!(size instanceof Long) || (long)size < 0 ||
+                (long)size > Integer.MAX_VALUE - 8) {
+            throw new VmError("Array size must be a non-negative integer.");
+        }
+        return new RpdcArray((int)(long)size);
+    }
+
+    private static Object length(Object[] arguments) {
+        Object value = arguments[0];
+        if (value instanceof RpdcArray) return (long)((RpdcArray)value).size();
+        if (value instanceof RpdcDictionary) {
+            return (long)((RpdcDictionary)value).size();
+        }
+        if (RpdcString.isString(value)) return (long)RpdcString.length(value);
+        throw new VmError(
+                "Can only take the length of an array, dictionary or string.");
+    }
+
+    // adauga(a, v): appends v to the array a.
+    private static Object append(Object[] arguments) {
+        if (!(arguments[0] instanceof RpdcArray)) {
+            throw new VmError("Can only append to an array.");
+        }
+        ((RpdcArray)arguments[0]).add(arguments[1]);
+        return null;
+    }
+
+    private static RpdcDictionary dictionary(Object value) {
+        if (value instanceof RpdcDictionary) return (RpdcDictionary)value;
+        throw new VmError("Expected a dictionary.");
+    }
+
+    public void interpret(ObjFunction function) {
+        ObjClosure closure = new ObjClosure(function);
+        push(closure);
+        try {
+            call(closure, 0);
+            run();
+        } catch (VmError error) {
+            resetStack();
+            throw error;
+        }
+    }
+
+    private void run() {
+        CallFrame frame = frames[frameCount - 1];
+        Chunk chunk = frame.closure.function.chunk;
+        byte[] code = chunk.code;
+        int ip = frame.ip;
+        int base = frame.slots;
+        Object[] stack = this.stack;
+        long[] numbers = this.numbers;
+        int sp = stackTop;
+
+        for (;;) {
+            // No instruction grows the stack by more than one slot.
+            if (sp == stack.length) {
+                frame.ip = ip;
+                growStack();
+                stack = this.stack;
+                numbers = this.numbers;
+            }
+
+            switch (code[ip++]) {
+                case OpCode.CONSTANT: {
+                    int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    stack[sp++] = chunk.constants[index];
+                    break;
+                }
+                case OpCode.NUMBER: {
+                    int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    stack[sp] = NUMBER;
+                    numbers[sp++] = chunk.numbers[index];
+                    break;
+                }
+                case OpCode.INTEGER: {
+                    int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    stack[sp] = INTEGER;
+                    numbers[sp++] = chunk.numbers[index];
+                    break;
+                }
+                case OpCode.NIL: stack[sp++] = null; break;
+                case OpCode.TRUE: stack[sp++] = true; break;
+                case OpCode.FALSE: stack[sp++] = false; break;
+                case OpCode.POP: sp--; break;
+                case OpCode.GET_LOCAL: {
+                    int slot = base + (code[ip++] & 0xff);
+                    stack[sp] = stack[slot];
+                    numbers[sp++] = numbers[slot];
+                    break;
+                }
+                case OpCode.SET_LOCAL: {
+                    int slot = base + (code[ip++] & 0xff);
+                    stack[slot] = stack[sp - 1];
+                    numbers[slot] = numbers[sp - 1];
+                    break;
+                }
+                case OpCode.GET_GLOBAL: {
+                    int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    Global global = chunk.globals[index];
+                    if (global == null) global = link(chunk, index);
+                    if (!global.defined && !loadModule(global, (String)chunk.constants[index])) {
+                        throw error(frame, ip, "Undefined variable '" +
+                                chunk.constants[index] + "'.");
+                    }
+                    stack[sp] = global.value;
+                    numbers[sp++] = global.number;
+                    break;
+                }
+                case OpCode.DEFINE_GLOBAL: {
+                    int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    Global global = chunk.globals[index];
+                    if (global == null) global = link(chunk, index);
+                    sp--;
+                    global.value = stack[sp];
+                    global.number = numbers[sp];
+                    global.defined = true;
+                    global.module = false;
+                    break;
+                }
+                case OpCode.SET_GLOBAL: {
+                    int index = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    Global global = chunk.globals[index];
+                    if (global == null) global = link(chunk, index);
+                    if (!global.defined || global.module) {
+                        String name = (String)chunk.constants[index];
+                        if (Biblioteca.isModule(name)) {
+                            throw error(frame, ip, "Can't assign to the module '" + name + "'.");
+                        }
+                        throw error(frame, ip, "Undefined variable '" + name + "'.");
+                    }
+                    global.value = stack[sp - 1];
+                    global.number = numbers[sp - 1];
+                    break;
+                }
+                case OpCode.GET_UPVALUE: {
+                    ObjUpvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+                    if (upvalue.location >= 0) {
+                        stack[sp] = stack[upvalue.location];
+                        numbers[sp++] = numbers[upvalue.location];
+                    } else {
+                        stack[sp] = upvalue.closed;
+                        numbers[sp++] = upvalue.closedNumber;
+                    }
+                    break;
+                }
+                case OpCode.SET_UPVALUE: {
+                    ObjUpvalue upvalue = frame.closure.upvalues[code[ip++] & 0xff];
+                    if (upvalue.location >= 0) {
+                        stack[upvalue.location] = stack[sp - 1];
+                        numbers[upvalue.location] = numbers[sp - 1];
+                    } else {
+                        upvalue.closed = stack[sp - 1];
+                        upvalue.closedNumber = numbers[sp - 1];
+                    }
+                    break;
+                }
+                case OpCode.GET_PROPERTY: {
+                    String name = (String)chunk.constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    if (!(stack[sp - 1] instanceof ObjInstance)) {
+                        throw error(frame, ip, "Only instances have properties.");
+                    }
+
+                    ObjInstance instance = (ObjInstance)stack[sp - 1];
+                    Object value = instance.fields.get(name);
+                    if (value != null || instance.fields.containsKey(name)) {
+                        store(sp - 1, value);
+                        break;
+                    }
+
+                    ObjClosure method = instance.klass.methods.get(name);
+                    if (method == null) {
+                        throw error(frame, ip, "Undefined property '" + name + "'.");
+                    }
+                    stack[sp - 1] = new ObjBoundMethod(instance, method);
+                    break;
+                }
+                case OpCode.SET_PROPERTY: {
+                    String name = (String)chunk.constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    if (!(stack[sp - 2] instanceof ObjInstance)) {
+                        throw error(frame, ip, "Only instances have fields.");
+                    }
+
+                    sp--;
+                    ((ObjInstance)stack[sp - 1]).fields.put(name, box(sp));
+                    stack[sp - 1] = stack[sp];
+                    numbers[sp - 1] = numbers[sp];
+                    break;
+                }
+                case OpCode.GET_SUPER: {
+                    String name = (String)chunk.constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    ObjClass superclass = (ObjClass)stack[--sp];
+                    ObjClosure method = superclass.methods.get(name);
+                    if (method == null) {
+                        throw error(frame, ip, "Undefined property '" + name + "'.");
+                    }
+                    stack[sp - 1] = new ObjBoundMethod(stack[sp - 1], method);
+                    break;
+                }
+                case OpCode.EQUAL:
+                    sp--;
+                    stack[sp - 1] = valuesEqual(sp - 1, sp);
+                    break;
+                case OpCode.NOT_EQUAL:
+                    sp--;
+                    stack[sp - 1] = !valuesEqual(sp - 1, sp);
+                    break;
+                // Two integers or two doubles are handled here; anything else,
+                // including a long that overflows, goes to arithmetic().
+                case OpCode.GREATER:
+                    sp--;
+                    if (stack[sp - 1] == INTEGER && stack[sp] == INTEGER) {
+                        stack[sp - 1] = numbers[sp - 1] > numbers[sp];
+                    } else if (stack[sp - 1] == NUMBER && stack[sp] == NUMBER) {
+                        stack[sp - 1] = real(numbers[sp - 1]) > real(numbers[sp]);
+                    } else {
+                        arithmetic(frame, ip, OpCode.GREATER, sp - 1);
+                    }
+                    break;
+                case OpCode.GREATER_EQUAL:
+                    sp--;
+                    if (stack[sp - 1] == INTEGER && stack[sp] == INTEGER) {
+                        stack[sp - 1] = numbers[sp - 1] >= numbers[sp];
+                    } else if (stack[sp - 1] == NUMBER && stack[sp] == NUMBER) {
+                        stack[sp - 1] = real(numbers[sp - 1]) >= real(numbers[sp]);
+                    } else {
+                        arithmetic(frame, ip, OpCode.GREATER_EQUAL, sp - 1);
+                    }
+                    break;
+                case OpCode.LESS:
+                    sp--;
+                    if (stack[sp - 1] == INTEGER && stack[sp] == INTEGER) {
+                        stack[sp - 1] = numbers[sp - 1] < numbers[sp];
+                    } else if (stack[sp - 1] == NUMBER && stack[sp] == NUMBER) {
+                        stack[sp - 1] = real(numbers[sp - 1]) < real(numbers[sp]);
+                    } else {
+                        arithmetic(frame, ip, OpCode.LESS, sp - 1);
+                    }
+                    break;
+                case OpCode.LESS_EQUAL:
+                    sp--;
+                    if (stack[sp - 1] == INTEGER && stack[sp] == INTEGER) {
+                        stack[sp - 1] = numbers[sp - 1] <= numbers[sp];
+                    } else if (stack[sp - 1] == NUMBER && stack[sp] == NUMBER) {
+                        stack[sp - 1] = real(numbers[sp - 1]) <= real(numbers[sp]);
+                    } else {
+                        arithmetic(frame, ip, OpCode.LESS_EQUAL, sp - 1);
+                    }
+                    break;
+                case OpCode.ADD: {
+                    sp--;
+                    Object a = stack[sp - 1];
+                    Object b = stack[sp];
+                    if (a == INTEGER && b == INTEGER) {
+                        long x = numbers[sp - 1];
+                        long y = numbers[sp];
+                        long result = x + y;
+                        if (((x ^ result) & (y ^ result)) >= 0) {
+                            numbers[sp - 1] = result;
+                            break;
+                        }
+                    } else if (a == NUMBER && b == NUMBER) {
+                        numbers[sp - 1] = bits(real(numbers[sp - 1]) + real(numbers[sp]));
+                        break;
+                    } else if (RpdcString.isString(a) && RpdcString.isString(b)) {
+                        stack[sp - 1] = RpdcString.concat(a, b);
+                        break;
+                    }
+                    arithmetic(frame, ip, OpCode.ADD, sp - 1);
+                    break;
+                }
+                case OpCode.SUBTRACT:
+                    sp--;
+                    if (stack[sp - 1] == INTEGER && stack[sp] == INTEGER) {
+                        long x = numbers[sp - 1];
+                        long y = numbers[sp];
+                        long result = x - y;
+                        if (((x ^ y) & (x ^ result)) >= 0) {
+                            numbers[sp - 1] = result;
+                            break;
+                        }
+                    } else if (stack[sp - 1] == NUMBER && stack[sp] == NUMBER) {
+                        numbers[sp - 1] = bits(real(numbers[sp - 1]) - real(numbers[sp]));
+                        break;
+                    }
+                    arithmetic(frame, ip, OpCode.SUBTRACT, sp - 1);
+                    break;
+                case OpCode.MULTIPLY:
+                    sp--;
+                    if (stack[sp - 1] == INTEGER && stack[sp] == INTEGER) {
+                        long x = numbers[sp - 1];
+                        long y = numbers[sp];
+                        long high = Math.multiplyHigh(x, y);
+                        long result = x * y;
+                        if ((high == 0 && result >= 0) || (high == -1 && result < 0)) {
+                            numbers[sp - 1] = result;
+                            break;
+                        }
+                    } else if (stack[sp - 1] == NUMBER && stack[sp] == NUMBER) {
+                        numbers[sp - 1] = bits(real(numbers[sp - 1]) * real(numbers[sp]));
+                        break;
+                    }
+                    arithmetic(frame, ip, OpCode.MULTIPLY, sp - 1);
+                    break;
+                case OpCode.DIVIDE:
+                    sp--;
+                    if (stack[sp - 1] == INTEGER && stack[sp] == INTEGER) {
+                        // Integers that don't divide evenly give a double.
+                        long x = numbers[sp - 1];
+                        long y = numbers[sp];
+                        if (y != 0 && x % y == 0 && !(x == Long.MIN_VALUE && y == -1)) {
+                            numbers[sp - 1] = x / y;
+                        } else {
+                            stack[sp - 1] = NUMBER;
+                            numbers[sp - 1] = bits((double)x / (double)y);
+                        }
+                    } else if (stack[sp - 1] == NUMBER && stack[sp] == NUMBER) {
+                        numbers[sp - 1] = bits(real(numbers[sp - 1]) / real(numbers[sp]));
+                    } else {
+                        arithmetic(frame, ip, OpCode.DIVIDE, sp - 1);
+                    }
+                    break;
+                case OpCode.MODULO:
+                    sp--;
+                    if (stack[sp - 1] == INTEGER && stack[sp] == INTEGER &&
+                            numbers[sp] != 0) {
+                        numbers[sp - 1] %= numbers[sp];
+                    } else if (stack[sp - 1] == NUMBER && stack[sp] == NUMBER) {
+                        numbers[sp - 1] = bits(real(numbers[sp - 1]) % real(numbers[sp]));
+                    } else {
+                        arithmetic(frame, ip, OpCode.MODULO, sp - 1);
+                    }
+                    break;
+                case OpCode.NOT:
+                    stack[sp - 1] = !isTruthy(stack[sp - 1]);
+                    break;
+                case OpCode.NEGATE:
+                    if (stack[sp - 1] == INTEGER && numbers[sp - 1] != Long.MIN_VALUE) {
+                        numbers[sp - 1] = -numbers[sp - 1];
+                    } else if (stack[sp - 1] == NUMBER) {
+                        numbers[sp - 1] = bits(-real(numbers[sp - 1]));
+                    } else {
+                        if (!isNumber(sp - 1)) {
+                            throw error(frame, ip, "Operand must be a number.");
+                        }
+                        store(sp - 1, Numbers.negate(box(sp - 1)));
+                    }
+                    break;
+                case OpCode.PRINT:
+                    sp--;
+                    if (stack[sp] == INTEGER) {
+                        printer.println(numbers[sp]);
+                    } else if (stack[sp] == NUMBER) {
+                        printer.println(real(numbers[sp]));
+                    } else {
+                        printer.println(stringify(stack[sp]));
+                    }
+                    break;
+                case OpCode.JUMP: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2 + offset;
+                    break;
+                }
+                case OpCode.JUMP_IF_FALSE: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    if (!isTruthy(stack[sp - 1])) ip += offset;
+                    break;
+                }
+                case OpCode.LOOP: {
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2 - offset;
+                    break;
+                }
+                case OpCode.FOR_PREP: {
+                    int slot = base + (code[ip++] & 0xff);
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    if (!isNumber(slot) || !isNumber(slot + 1) ||
+                            !isNumber(slot + 2)) {
+                        throw error(frame, ip, "Loop bounds must be numbers.");
+                    }
+
+                    // Like the tree-walk interpreter, the loop counts in
+                    // longs if all three are integers and in doubles if not.
+                    boolean integers = stack[slot] == INTEGER &&
+                            stack[slot + 1] == INTEGER && stack[slot + 2] == INTEGER;
+                    if (!integers) countInDoubles(slot);
+                    if (integers ? numbers[slot + 2] == 0 : real(numbers[slot + 2]) == 0) {
+                        throw error(frame, ip, "Loop step can't be zero.");
+                    }
+                    if (!(integers ? inRange(numbers[slot], numbers[slot + 1], numbers[slot + 2])
+                            : inRange(real(numbers[slot]), real(numbers[slot + 1]),
+                                      real(numbers[slot + 2])))) {
+                        ip += offset;
+                    }
+                    break;
+                }
+                case OpCode.FOR_LOOP: {
+                    int slot = base + (code[ip++] & 0xff);
+                    int offset = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    if (stack[slot] == INTEGER && stack[slot + 2] == INTEGER) {
+                        long step = numbers[slot + 2];
+                        long counter = numbers[slot] + step;
+                        // Overflowing a long means the limit was passed.
+                        if ((counter > numbers[slot]) == (step > 0) &&
+                                inRange(counter, numbers[slot + 1], step)) {
+                            numbers[slot] = counter;
+                            ip -= offset;
+                        }
+                        break;
+                    }
+
+                    // The body assigned the counter something else.
+                    if (!isNumber(slot)) {
+                        throw error(frame, ip, "Loop counter must be a number.");
+                    }
+                    countInDoubles(slot);
+                    double step = real(numbers[slot + 2]);
+                    double counter = real(numbers[slot]) + step;
+                    if (inRange(counter, real(numbers[slot + 1]), step)) {
+                        numbers[slot] = bits(counter);
+                        ip -= offset;
+                    }
+                    break;
+                }
+                case OpCode.CALL: {
+                    int argCount = code[ip++] & 0xff;
+                    frame.ip = ip;
+                    stackTop = sp;
+                    callValue(stack[sp - 1 - argCount], argCount);
+                    stack = this.stack;
+                    numbers = this.numbers;
+                    sp = stackTop;
+                    frame = frames[frameCount - 1];
+                    chunk = frame.closure.function.chunk;
+                    code = chunk.code;
+                    ip = frame.ip;
+                    base = frame.slots;
+                    break;
+                }
+                // 'intoarce f(...)': a call to a closure takes over the
+                // caller's frame, so tail recursion runs in constant stack.
+                case OpCode.TAIL_CALL: {
+                    int argCount = code[ip++] & 0xff;
+                    frame.ip = ip;
+                    stackTop = sp;
+                    callValue(stack[sp - 1 - argCount], argCount);
+                    if (frames[frameCount - 1] != frame) {
+                        replaceFrame(frame);
+                    }
+                    stack = this.stack;
+                    numbers = this.numbers;
+                    sp = stackTop;
+                    frame = frames[frameCount - 1];
+                    chunk = frame.closure.function.chunk;
+                    code = chunk.code;
+                    ip = frame.ip;
+                    base = frame.slots;
+                    break;
+                }
+                case OpCode.INVOKE: {
+                    String name = (String)chunk.constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    int argCount = code[ip + 2] & 0xff;
+                    ip += 3;
+                    frame.ip = ip;
+                    stackTop = sp;
+                    invoke(name, argCount);
+                    stack = this.stack;
+                    numbers = this.numbers;
+                    sp = stackTop;
+                    frame = frames[frameCount - 1];
+                    chunk = frame.closure.function.chunk;
+                    code = chunk.code;
+                    ip = frame.ip;
+                    base = frame.slots;
+                    break;
+                }
+                case OpCode.SUPER_INVOKE: {
+                    String name = (String)chunk.constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    int argCount = code[ip + 2] & 0xff;
+                    ip += 3;
+                    frame.ip = ip;
+                    stackTop = sp - 1;
+                    invokeFromClass((ObjClass)stack[sp - 1], name, argCount);
+                    stack = this.stack;
+                    numbers = this.numbers;
+                    sp = stackTop;
+                    frame = frames[frameCount - 1];
+                    chunk = frame.closure.function.chunk;
+                    code = chunk.code;
+                    ip = frame.ip;
+                    base = frame.slots;
+                    break;
+                }
+                case OpCode.CLOSURE: {
+                    ObjFunction function = (ObjFunction)chunk.constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    ObjClosure closure = new ObjClosure(function);
+                    stack[sp++] = closure;
+                    for (int i = 0; i < closure.upvalues.length; i++) {
+                        boolean isLocal = code[ip++] == 1;
+                        int index = code[ip++] & 0xff;
+                        if (isLocal) {
+                            closure.upvalues[i] = captureUpvalue(base + index);
+                        } else {
+                            closure.upvalues[i] = frame.closure.upvalues[index];
+                        }
+                    }
+                    break;
+                }
+                case OpCode.CLOSE_UPVALUE:
+                    closeUpvalues(sp - 1);
+                    sp--;
+                    break;
+                case OpCode.RETURN: {
+                    sp--;
+                    Object result = stack[sp];
+                    long number = numbers[sp];
+                    closeUpvalues(base);
+                    frameCount--;
+                    if (frameCount == 0) {
+                        stackTop = 0;
+                        return;
+                    }
+
+                    sp = base;
+                    stack[sp] = result;
+                    numbers[sp++] = number;
+                    frame = frames[frameCount - 1];
+                    chunk = frame.closure.function.chunk;
+                    code = chunk.code;
+                    ip = frame.ip;
+                    base = frame.slots;
+                    break;
+                }
+                case OpCode.NEW_ARRAY: {
+                    int count = ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+                    ip += 2;
+                    RpdcArray array = new RpdcArray();
+                    for (int i = sp - count; i < sp; i++) {
+                        array.add(box(i));
+                    }
+                    sp -= count;
+                    stack[sp++] = array;
+                    break;
+                }
+                // Elements of an array of longs or doubles are read and
+                // written without boxing them.
+                case OpCode.GET_INDEX: {
+                    sp--;
+                    // A key that isn't there reads as nimic.
+                    if (stack[sp - 1] instanceof RpdcDictionary) {
+                        RpdcDictionary dictionary = (RpdcDictionary)stack[sp - 1];
+                        store(sp - 1, dictionary.get(box(sp)));
+                        break;
+                    }
+
+                    RpdcArray array = array(frame, ip, stack[sp - 1]);
+                    int index = index(frame, ip, array, sp);
+                    long[] longs = array.longs();
+                    double[] doubles = array.doubles();
+                    if (longs != null) {
+                        stack[sp - 1] = INTEGER;
+                        numbers[sp - 1] = longs[index];
+                    } else if (doubles != null) {
+                        stack[sp - 1] = NUMBER;
+                        numbers[sp - 1] = bits(doubles[index]);
+                    } else {
+                        store(sp - 1, array.get(index));
+                    }
+                    break;
+                }
+                case OpCode.CHECK_INDEX:
+                    if (!(stack[sp - 2] instanceof RpdcDictionary)) {
+                        index(frame, ip, array(frame, ip, stack[sp - 2]), sp - 1);
+                    }
+                    break;
+                case OpCode.SET_INDEX: {
+                    // CHECK_INDEX has checked the array and the index, and
+                    // arrays never shrink.
+                    sp -= 2;
+                    if (stack[sp - 1] instanceof RpdcDictionary) {
+                        ((RpdcDictionary)stack[sp - 1]).put(box(sp), box(sp + 1));
+                        stack[sp - 1] = stack[sp + 1];
+                        numbers[sp - 1] = numbers[sp + 1];
+                        break;
+                    }
+
+                    RpdcArray array = (RpdcArray)stack[sp - 1];
+                    int index = (int)numbers[sp];
+                    long[] longs = array.longs();
+                    double[] doubles = array.doubles();
+                    if (longs != null && stack[sp + 1] == INTEGER) {
+                        longs[index] = numbers[sp + 1];
+                    } else if (doubles != null && stack[sp + 1] == NUMBER) {
+                        doubles[index] = real(numbers[sp + 1]);
+                    } else {
+                        array.set(index, box(sp + 1));
+                    }
+                    stack[sp - 1] = stack[sp + 1];
+                    numbers[sp - 1] = numbers[sp + 1];
+                    break;
+                }
+                case OpCode.CLASS: {
+                    String name = (String)chunk.constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    stack[sp++] = new ObjClass(name);
+                    break;
+                }
+                case OpCode.INHERIT: {
+                    if (!(stack[sp - 2] instanceof ObjClass)) {
+                        throw error(frame, ip, "Superclass must be a class.");
+                    }
+
+                    ObjClass superclass = (ObjClass)stack[sp - 2];
+                    ObjClass subclass = (ObjClass)stack[--sp];
+                    subclass.methods.putAll(superclass.methods);
+                    subclass.initializer = superclass.initializer;
+                    break;
+                }
+                case OpCode.METHOD: {
+                    String name = (String)chunk.constants[((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff)];
+                    ip += 2;
+                    ObjClosure method = (ObjClosure)stack[--sp];
+                    ObjClass klass = (ObjClass)stack[sp - 1];
+                    klass.methods.put(name, method);
+                    if (name.equals("init")) klass.initializer = method;
+                    break;
+                }
+                default:
+                    throw error(frame, ip, "Unknown opcode.");
+            }
+        }
+    }
+
+    private void callValue(Object callee, int argCount) {
+        if (callee instanceof ObjClosure) {
+            call((ObjClosure)callee, argCount);
+        } else if (callee instanceof ObjBoundMethod) {
+            ObjBoundMethod bound = (ObjBoundMethod)callee;
+            stack[stackTop - argCount - 1] = bound.receiver;
+            call(bound.method, argCount);
+        } else if (callee instanceof ObjClass) {
+            ObjClass klass = (ObjClass)callee;
+            stack[stackTop - argCount - 1] = new ObjInstance(klass);
+            if (klass.initializer != null) {
+                call(klass.initializer, argCount);
+            } else if (argCount != 0) {
+                throw error("Expected 0 arguments but got " + argCount + ".");
+            }
+        } else if (callee instanceof ObjNative) {
+            ObjNative function = (ObjNative)callee;
+            if (argCount != function.arity) {
+                throw error("Expected " + function.arity +
+                        " arguments but got " + argCount + ".");
+            }
+
+            Object[] arguments = new Object[argCount];
+            for (int i = 0; i < argCount; i++) {
+                arguments[i] = box(stackTop - argCount + i);
+            }
+            Object result;
+            try {
+                result = function.function.call(arguments);
+            } catch (VmError error) {
+                if (error.line >= 0) throw error;
+                throw error(error.getMessage());
+            } catch (RuntimeError error) {
+                throw error(error.getMessage());
+            }
+            stackTop -= argCount + 1;
+            push(result);
+        } else {
+            throw error("Can only call functions and classes.");
+        }
+    }
+
+    private void invoke(String name, int argCount) {
+        Object receiver = stack[stackTop - argCount - 1];
+        if (!(receiver instanceof ObjInstance)) {
+            throw error("Only instances have properties.");
+        }
+
+        ObjInstance instance = (ObjInstance)receiver;
+        Object value = instance.fields.get(name);
+        if (value != null || instance.fields.containsKey(name)) {
+            store(stackTop - argCount - 1, value);
+            callValue(value, argCount);
+            return;
+        }
+
+        invokeFromClass(instance.klass, name, argCount);
+    }
+
+    private void invokeFromClass(ObjClass klass, String name, int argCount) {
+        ObjClosure method = klass.methods.get(name);
+        if (method == null) {
+            throw error("Undefined property '" + name + "'.");
+        }
+        call(method, argCount);
+    }
+
+    private void call(ObjClosure closure, int argCount) {
+        if (argCount != closure.function.arity) {
+            throw error("Expected " + closure.function.arity +
+                    " arguments but got " + argCount + ".");
+        }
+
+        if (frameCount == frames.length) {
+            checkBudget(stack.length, frameCount * 2);
+            frames = Arrays.copyOf(frames, frameCount * 2);
+        }
+
+        CallFrame frame = frames[frameCount];
+        if (frame == null) {
+            frame = new CallFrame();
+            frames[frameCount] = frame;
+        }
+        frameCount++;
+
+        frame.closure = closure;
+        frame.ip = 0;
+        frame.slots = stackTop - argCount - 1;
+    }
+
+    // Moves the frame just pushed down onto 'caller', which it replaces,
+    // along with the callee and its arguments.
+    private void replaceFrame(CallFrame caller) {
+        CallFrame callee = frames[frameCount - 1];
+        closeUpvalues(caller.slots);
+        int count = stackTop - callee.slots;
+        System.arraycopy(stack, callee.slots, stack, caller.slots, count);
+        System.arraycopy(numbers, callee.slots, numbers, caller.slots, count);
+        stackTop = caller.slots + count;
+        callee.slots = caller.slots;
+
+        frameCount--;
+        frames[frameCount - 1] = callee;
+        frames[frameCount] = caller;
+    }
+
+    private Global link(Chunk chunk, int index) {
+        Global global = globals.computeIfAbsent(
+                (String)chunk.constants[index], name -> new Global());
+        chunk.globals[index] = global;
+        return global;
+    }
+
+    // Standard library modules are only built the first time a program reads
+    // one, as in the tree-walk interpreter. The module is an instance whose
+    // fields wrap the library's functions.
+    private boolean loadModule(Global global, String name) {
+        Map<String, RpdcCallable> functions = Biblioteca.functions(name);
+        if (functions == null) return false;
+
+        ObjInstance module = new ObjInstance(new ObjClass(name));
+        for (Map.Entry<String, RpdcCallable> function : functions.entrySet()) {
+            RpdcCallable callable = function.getValue();
+            module.fields.put(function.getKey(), new ObjNative(callable.arity(),
+                    arguments -> callable.call(null, Arrays.asList(arguments))));
+        }
+        global.value = module;
+        global.defined = true;
+        global.module = true;
+        return true;
+    }
+
+    private ObjUpvalue captureUpvalue(int location) {
+        ObjUpvalue previous = null;
+        ObjUpvalue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.location > location) {
+            previous = upvalue;
+            upvalue = upvalue.next;
+        }
+
+        if (upvalue != null && upvalue.location == location) return upvalue;
+
+        ObjUpvalue created = new ObjUpvalue(location);
+        created.next = upvalue;
+        if (previous == null) {
+            openUpvalues = created;
+        } else {
+            previous.next = created;
+        }
+
+        return created;
+    }
+
+    private void closeUpvalues(int last) {
+        while (openUpvalues != null && openUpvalues.location >= last) {
+            ObjUpvalue upvalue = openUpvalues;
+            upvalue.closed = stack[upvalue.location];
+            upvalue.closedNumber = numbers[upvalue.location];
+            upvalue.location = -1;
+            openUpvalues = upvalue.next;
+        }
+    }
+
+    private void growStack() {
+        checkBudget(stack.length * 2, frames.length);
+        stack = Arrays.copyOf(stack, stack.length * 2);
+        numbers = Arrays.copyOf(numbers, numbers.length * 2);
+    }
+
+    // The operators' slow path, for operands the fast paths in run() don't
+    // take: an integer mixed with a double, a BigInteger, or two longs whose
+    // result overflows. The result replaces the left operand at 'a'.
+    private void arithmetic(CallFrame frame, int ip, byte operator, int a) {
+        int b = a + 1;
+        if (!isNumber(a) || !isNumber(b)) {
+            throw error(frame, ip, operator == OpCode.ADD
+                    ? "Operands must be two numbers or two strings"
+                    : "Operands must be numbers.");
+        }
+
+        if (stack[b] == NUMBER && stack[a] == INTEGER ||
+                stack[a] == NUMBER && stack[b] == INTEGER) {
+            double x = toDouble(a);
+            double y = toDouble(b);
+            switch (operator) {
+                case OpCode.GREATER: stack[a] = x > y; return;
+                case OpCode.GREATER_EQUAL: stack[a] = x >= y; return;
+                case OpCode.LESS: stack[a] = x < y; return;
+                case OpCode.LESS_EQUAL: stack[a] = x <= y; return;
+                case OpCode.ADD: x += y; break;
+                case OpCode.SUBTRACT: x -= y; break;
+                case OpCode.MULTIPLY: x *= y; break;
+                case OpCode.DIVIDE: x /= y; break;
+                default: x %= y; break;
+            }
+            stack[a] = NUMBER;
+            numbers[a] = bits(x);
+            return;
+        }
+
+        Object x = box(a);
+        Object y = box(b);
+        switch (operator) {
+            case OpCode.GREATER: stack[a] = Numbers.less(y, x); break;
+            case OpCode.GREATER_EQUAL: stack[a] = Numbers.lessEqual(y, x); break;
+            case OpCode.LESS: stack[a] = Numbers.less(x, y); break;
+            case OpCode.LESS_EQUAL: stack[a] = Numbers.lessEqual(x, y); break;
+            case OpCode.ADD: store(a, Numbers.add(x, y)); break;
+            case OpCode.SUBTRACT: store(a, Numbers.subtract(x, y)); break;
+            case OpCode.MULTIPLY: store(a, Numbers.multiply(x, y)); break;
+            case OpCode.DIVIDE: store(a, Numbers.divide(x, y)); break;
+            default: store(a, Numbers.modulo(x, y)); break;
+        }
+    }
+
+    private RpdcArray array(CallFrame frame, int ip, Object object) {
+        if (object instanceof RpdcArray) return (RpdcArray)object;
+        throw error(frame, ip, "Only arrays and dictionaries can be indexed.");
+    }
+
+    // The index in stack slot 'slot', checked like Interpreter.index.
+    private int index(CallFrame frame, int ip, RpdcArray array, int slot) {
+        if (stack[slot] != INTEGER) {
+            throw error(frame, ip, "Array index must be an integer.");
+        }
+
+        long index = numbers[slot];
+        if (index < 0 || index >= array.size()) {
+            throw error(frame, ip, "Array index " + index +
+                    " out of bounds for length " + array.size() + ".");
+        }
+        return (int)index;
+    }
+
+    // Turns a counted loop's counter, limit and step into doubles.
+    private void countInDoubles(int slot) {
+        for (int i = slot; i < slot + 3; i++) {
+            if (stack[i] == NUMBER) continue;
+            numbers[i] = bits(toDouble(i));
+            stack[i] = NUMBER;
+        }
+    }
+
+    private static boolean inRange(long counter, long limit, long step) {
+        return step > 0 ? counter <= limit : counter >= limit;
+    }
+
+    private static boolean inRange(double counter, double limit, double step) {
+        return step > 0 ? counter <= limit : counter >= limit;
+    }
+
+    private boolean isNumber(int index) {
+        return stack[index] == INTEGER || stack[index] == NUMBER ||
+                stack[index] instanceof BigInteger;
+    }
+
+    private double toDouble(int index) {
+        if (stack[index] == NUMBER) return real(numbers[index]);
+        if (stack[index] == INTEGER) return numbers[index];
+        return ((BigInteger)stack[index]).doubleValue();
+    }
+
+    private static double real(long bits) {
+        return Double.longBitsToDouble(bits);
+    }
+
+    private static long bits(double value) {
+        return Double.doubleToRawLongBits(value);
+    }
+
+    private void checkBudget(int slots, int frameSlots) {
+        if (slots * SLOT_BYTES + frameSlots * FRAME_BYTES > stackBudget) {
+            throw error("Stack overflow.");
+        }
+    }
+
+    private Object box(int index) {
+        if (stack[index] == NUMBER) return real(numbers[index]);
+        if (stack[index] == INTEGER) return numbers[index];
+        return stack[index];
+    }
+
+    private void store(int index, Object value) {
+        if (value instanceof Double) {
+            stack[index] = NUMBER;
+            numbers[index] = bits((double)value);
+        } else if (value instanceof Long) {
+            stack[index] = INTEGER;
+            numbers[index] = (long)value;
+        } else {
+            stack[index] = value;
+        }
+    }
+
+    private void push(Object value) {
+        if (stackTop == stack.length) growStack();
+        store(stackTop++, value);
+    }
+
+    private void resetStack() {
+        Arrays.fill(stack, null);
+        stackTop = 0;
+        frameCount = 0;
+        openUpvalues = null;
+    }
+
+    private void defineNative(String name, int arity, ObjNative.NativeFn function) {
+        Global global = new Global();
+        global.value = new ObjNative(arity, function);
+        global.defined = true;
+        globals.put(name, global);
+    }
+
+    private VmError error(CallFrame frame, int ip, String message) {
+        return new VmError(frame.closure.function.chunk.getLine(ip - 1), message);
+    }
+
+    private VmError error(String message) {
+        CallFrame frame = frames[frameCount - 1];
+        return error(frame, frame.ip, message);
+    }
+
+    // Like Interpreter.isEqual: two doubles match as Double.equals does,
+    // and otherwise 1 and 1.0 are the same number.
+    private boolean valuesEqual(int a, int b) {
+        if (stack[a] == INTEGER && stack[b] == INTEGER) {
+            return numbers[a] == numbers[b];
+        }
+        if (stack[a] == NUMBER && stack[b] == NUMBER) {
+            return Double.doubleToLongBits(real(numbers[a])) ==
+                    Double.doubleToLongBits(real(numbers[b]));
+        }
+        if (isNumber(a) && isNumber(b)) {
+            return Numbers.equal(box(a), box(b));
+        }
+
+        return isEqual(box(a), box(b));
+    }
+
+    private static boolean isTruthy(Object object) {
+        if (object == null) return false;
+        if (object instanceof Boolean) return (boolean)object;
+        return true;
+    }
+
+    private static boolean isEqual(Object a, Object b) {
+        if (a == null && b == null) return true;
+        if (a == null) return false;
+
+        return RpdcString.flatten(a).equals(RpdcString.flatten(b));
+    }
+
+    private static String stringify(double number) {
+        String text = Double.toString(number);
+        if (text.endsWith(".0")) {
+            text = text.substring(0, text.length() - 2);
+        }
+        return text;
+    }
+
+    private static String stringify(Object object) {
+        if (object == null) return "nimic";
+        if (object instanceof Double) return stringify((double)object);
+
+        return object.toString();
+    }
+}
@@ -0,0 +1,16 @@
+package com.interpreter.rpdc.vm;
+
+public class VmError extends RuntimeException {
+    public final int line;
+
+    VmError(int line, String message) {
+        super(message);
+        this.line = line;
+    }
+
+    // From a native function, which doesn't know the line; the VM reports
+    // it at the line of the call.
+    VmError(String message) {
+        this(-1, message);
+    }
+}